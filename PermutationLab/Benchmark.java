@@ -0,0 +1,25 @@
+import java.util.*;
+
+// Times the hot paths of PermutationLab and compares them with stored baseline results, see BenchmarkHarness.
+// Usage: java [-Dwarmup=3] [-Druns=5] [-Dbaseline=benchmark-baseline.txt] [-Dsave=file] Benchmark
+public class Benchmark {
+	public static void main(String[] args) throws Exception {
+		BenchmarkHarness harness = new BenchmarkHarness(3, 5);
+
+		List<byte[]> cycle8 = main.get2RainbowCycle(8);
+		List<byte[]> cycle9 = main.get2RainbowCycle(9);
+		List<byte[]> cycle50 = main.get2RainbowCycle(50);
+
+		harness.measure("get2RainbowCycle n=9", () -> main.get2RainbowCycle(9).size());
+		harness.measure("applyInductionStep n=8", () -> main.applyInductionStep(cycle8, 8).size());
+		harness.measure("isRainbowCycle n=9 r=2", () -> main.isRainbowCycle(cycle9, 2, 9)? 1: 0);
+		harness.measure("get2RainbowCycle n=50", () -> main.get2RainbowCycle(50).size());
+		harness.measure("isRainbowCycle n=50 r=2", () -> main.isRainbowCycle(cycle50, 2, 50)? 1: 0);
+
+		TranspositionGraph graph4 = new TranspositionGraph(4);
+		graph4.options.termination = Termination.COUNT;
+		harness.measure("findRainbowCycle n=4 r=2 count", () -> graph4.findRainbowCycle(2, 1).size() + graph4.lastSearch.getCycleCount());
+
+		harness.compareWithBaseline();
+	}
+}
@@ -0,0 +1,142 @@
+import java.util.*;
+
+// Streams the cycle applyInductionStep makes from a cycle of permutations of 1..n, in one pass over
+// that cycle and keeping only its first, current and next permutation. Each permutation is extended
+// by n+1 (Block A) or has n replaced by n+1 and n appended (Block B, only if n is odd). Where two
+// consecutive extended permutations differ by a transposition (2k-1,2k), the two permutations
+// reached by (2k-1,n+1) and then (2k-1,2k) are put in between. If n is odd, the middle permutation
+// is followed by its image under (n,n+1), and the cycle is closed by the transposition between the
+// first and the last permutation of the given cycle.
+//
+// The middle can only be found knowing the size of the result: a 2-rainbow cycle of 1..n holds
+// each of the n(n-1)/2 transpositions twice, so it has n(n-1) permutations.
+class InductionStep implements Iterator<byte[]> {
+	Iterator<byte[]> source;
+	int sourceSize;
+	int n;
+
+	// Index of the permutation of the result after which (n,n+1) is inserted, if n is odd.
+	// Counted without that permutation and the closing one.
+	int middle;
+
+	int sourceIndex;
+	byte[] firstSource, lastSource;
+	byte[] firstExtended, currentExtended;
+	byte[] lastEmitted;
+	int emitted;
+	Deque<byte[]> pending = new ArrayDeque<>();
+	boolean closed;
+
+	// resultSize is the number of permutations the step makes of the sourceSize ones
+	InductionStep(Iterator<byte[]> source, int sourceSize, int resultSize, int n) {
+		this.source = source;
+		this.sourceSize = sourceSize;
+		this.n = n;
+		this.middle = (resultSize - 2) / 2;
+	}
+
+	// The cycle of permutations of 1..n+1 made from a 2-rainbow cycle of 1..n
+	InductionStep(Iterator<byte[]> source, int n) {
+		this(source, n * (n - 1), (n + 1) * n, n);
+	}
+
+	// The number of permutations applyInductionStep makes of the given cycle
+	static int getResultSize(List<byte[]> list, int n) {
+		int size = list.size() + (n % 2 == 1? 2: 0);
+		byte[] first = extend(list.get(0), 0, list.size(), n);
+		byte[] current = first;
+		for (int i = 0; i < list.size(); i++) {
+			byte[] next = i + 1 < list.size()? extend(list.get(i + 1), i + 1, list.size(), n): first;
+			if (getInsertedTransposition(current, next, n) != Permutations.NONE)
+				size += 2;
+			current = next;
+		}
+		return size;
+	}
+
+	// Adds n+1 at the end of the permutation (only in Block A if n is odd).
+	// If n is odd, replaces n with n+1 in each permutation of Block B and adds n at the end.
+	static byte[] extend(byte[] perm, int index, int size, int n) {
+		byte[] mod = Arrays.copyOf(perm, n + 1);
+		if (n % 2 == 0 || index <= size / 2) {
+			Permutations.set(mod, n + 1, n + 1);
+		} else {
+			for (int k = 1; k <= n; k++) {
+				if (Permutations.get(mod, k) == n)
+					Permutations.set(mod, k, n + 1);
+			}
+			Permutations.set(mod, n + 1, n);
+		}
+		return mod;
+	}
+
+	// The transposition (2k-1,2k) connecting two consecutive permutations, or NONE
+	static int getInsertedTransposition(byte[] perm, byte[] next, int n) {
+		int diff = Permutations.getTransposition(perm, next, n);
+		int k = Permutations.second(diff) / 2;
+		if (diff != Permutations.NONE && k <= n / 2 && diff == Permutations.transposition(2 * k - 1, 2 * k))
+			return diff;
+		return Permutations.NONE;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (pending.isEmpty() && !closed) {
+			advance();
+		}
+		return !pending.isEmpty();
+	}
+
+	@Override
+	public byte[] next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		return pending.poll();
+	}
+
+	// Puts the next permutation of the given cycle and the ones following it into pending
+	private void advance() {
+		if (sourceIndex == sourceSize) {
+			// Close the cycle with the transposition between the first and the last permutation of the given cycle
+			if (n % 2 == 1)
+				pending.add(Permutations.withTransposition(lastEmitted, Permutations.getTransposition(firstSource, lastSource, n)));
+			closed = true;
+			return;
+		}
+
+		if (sourceIndex == 0) {
+			firstSource = source.next();
+			lastSource = firstSource;
+			firstExtended = extend(firstSource, 0, sourceSize, n);
+			currentExtended = firstExtended;
+		}
+		sourceIndex++;
+
+		byte[] nextExtended = firstExtended;
+		if (sourceIndex < sourceSize) {
+			lastSource = source.next();
+			nextExtended = extend(lastSource, sourceIndex, sourceSize, n);
+		}
+
+		// Replace t_i with the triple t_i(n+1)
+		emit(currentExtended);
+		int diff = getInsertedTransposition(currentExtended, nextExtended, n);
+		if (diff != Permutations.NONE) {
+			byte[] firstNewPerm = Permutations.withTransposition(currentExtended, Permutations.transposition(Permutations.first(diff), n + 1));
+			emit(firstNewPerm);
+			emit(Permutations.withTransposition(firstNewPerm, diff));
+		}
+		currentExtended = nextExtended;
+	}
+
+	// Apply (n,n+1) on last permutation of block A if n is odd
+	private void emit(byte[] perm) {
+		pending.add(perm);
+		lastEmitted = perm;
+		if (n % 2 == 1 && emitted == middle) {
+			lastEmitted = Permutations.withTransposition(perm, Permutations.transposition(n, n + 1));
+			pending.add(lastEmitted);
+		}
+		emitted++;
+	}
+}
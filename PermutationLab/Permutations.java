@@ -0,0 +1,94 @@
+import java.util.*;
+
+// Permutations of 1..n as byte arrays, entries read unsigned so n may go up to 255.
+// A transposition of the positions i < j (counted from 1) is packed into the int i << 16 | j.
+// Applying and finding transpositions works on the arrays in place and allocates nothing.
+class Permutations {
+	static final int MAX_N = 255;
+	static final int NONE = -1;
+
+	static int transposition(int i, int j) {
+		return i < j? i << 16 | j: j << 16 | i;
+	}
+
+	static int first(int transposition) {
+		return transposition >>> 16;
+	}
+
+	static int second(int transposition) {
+		return transposition & 0xffff;
+	}
+
+	// Index of the transposition among all of 1..n, ordered (1,2), (1,3), .., (1,n), (2,3), ..
+	static int index(int transposition, int n) {
+		int i = first(transposition), j = second(transposition);
+		return (i - 1) * n - (i - 1) * i / 2 + (j - i - 1);
+	}
+
+	static int get(byte[] perm, int position) {
+		return perm[position - 1] & 0xff;
+	}
+
+	static void set(byte[] perm, int position, int value) {
+		perm[position - 1] = (byte) value;
+	}
+
+	// The transposition of the positions where the first n entries of both permutations differ,
+	// or NONE if they don't differ in exactly two positions
+	static int getTransposition(byte[] perm1, byte[] perm2, int n) {
+		int i = 0, j = 0;
+		for (int k = 0; k < n; k++) {
+			if (perm1[k] != perm2[k]) {
+				if (i == 0)
+					i = k + 1;
+				else if (j == 0)
+					j = k + 1;
+				else
+					return NONE;
+			}
+		}
+		return j == 0? NONE: transposition(i, j);
+	}
+
+	// Swaps the entries at the positions of the transposition
+	static void applyTransposition(byte[] perm, int transposition) {
+		int i = first(transposition) - 1, j = second(transposition) - 1;
+		byte tmp = perm[i];
+		perm[i] = perm[j];
+		perm[j] = tmp;
+	}
+
+	static byte[] withTransposition(byte[] perm, int transposition) {
+		byte[] result = perm.clone();
+		applyTransposition(result, transposition);
+		return result;
+	}
+
+	// Digits as before for n up to 9, entries separated by spaces beyond that
+	static byte[] parse(String perm) {
+		String[] entries = perm.contains(" ")? perm.trim().split(" +"): perm.split("");
+		byte[] result = new byte[entries.length];
+		for (int k = 0; k < entries.length; k++) {
+			result[k] = (byte) Integer.parseInt(entries[k]);
+		}
+		return result;
+	}
+
+	static String toString(byte[] perm) {
+		StringBuilder builder = new StringBuilder();
+		for (int k = 0; k < perm.length; k++) {
+			if (perm.length > 9 && k > 0)
+				builder.append(' ');
+			builder.append(perm[k] & 0xff);
+		}
+		return builder.toString();
+	}
+
+	static List<byte[]> parse(String... perms) {
+		List<byte[]> result = new ArrayList<>();
+		for (String perm : perms) {
+			result.add(parse(perm));
+		}
+		return result;
+	}
+}
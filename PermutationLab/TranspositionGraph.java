@@ -0,0 +1,184 @@
+import java.util.*;
+
+// The permutations of 1..n joined by the transpositions of two positions, as the rainbow cycle search
+// sees it. Nothing is stored: a permutation's id is its rank in lexicographic order (from its Lehmer code),
+// and the arcs leaving it are numbered id * T + t, where t is the index of the transposition (see
+// Permutations.index) and the label of the arc. A rainbow cycle takes each of the T transpositions r times.
+//
+// Ids are ints, so n is at most 10.
+class TranspositionGraph implements LabelledGraph {
+	static final int MAX_N = 10;
+
+	int n;
+	int nodeCount;
+	int transpositionCount;
+
+	// The transposition of index t, and k! for k up to n
+	int[] transpositions;
+	int[] factorials;
+
+	// Termination, time limit and the other settings of the search. Feasibility pruning is off: its
+	// label index would store every arc, 10! * 45 of them for n = 10, and pruning hardly ever applies
+	// here, since every transposition can enter every permutation.
+	SearchOptions options = new SearchOptions();
+
+	// The most recent search, for its statistics
+	RainbowSearch lastSearch;
+
+	TranspositionGraph(int n) {
+		if (n < 2 || n > MAX_N)
+			throw new IllegalArgumentException("n must be between 2 and " + MAX_N);
+
+		this.n = n;
+		this.transpositionCount = n * (n - 1) / 2;
+		factorials = new int[n + 1];
+		factorials[0] = 1;
+		for (int k = 1; k <= n; k++) {
+			factorials[k] = factorials[k - 1] * k;
+		}
+		this.nodeCount = factorials[n];
+
+		transpositions = new int[transpositionCount];
+		for (int i = 1; i < n; i++) {
+			for (int j = i + 1; j <= n; j++) {
+				int transposition = Permutations.transposition(i, j);
+				transpositions[Permutations.index(transposition, n)] = transposition;
+			}
+		}
+		options.feasibilityPruning = false;
+	}
+
+	@Override
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	@Override
+	public int getLabelCount() {
+		return transpositionCount;
+	}
+
+	@Override
+	public int getFirstArc(int node) {
+		return node * transpositionCount;
+	}
+
+	@Override
+	public int getArcTarget(int arc) {
+		int id = arc / transpositionCount;
+		return expand(id).targets[arc - id * transpositionCount];
+	}
+
+	@Override
+	public int getArcLabel(int arc) {
+		return arc % transpositionCount;
+	}
+
+	// The targets of the arcs leaving a node, by transposition
+	static class ExpandedNode {
+		int id = -1;
+		int[] targets;
+	}
+
+	// As in JohnsonGraph, each worker keeps the nodes it expanded recently, one slot for the ids
+	// equal modulo CACHED_NODES, so the search doesn't rank a permutation for every arc it looks at
+	static final int CACHED_NODES = 64;
+	ThreadLocal<ExpandedNode[]> expandedNodes = ThreadLocal.withInitial(() -> {
+		ExpandedNode[] slots = new ExpandedNode[CACHED_NODES];
+		for (int i = 0; i < CACHED_NODES; i++) {
+			slots[i] = new ExpandedNode();
+			slots[i].targets = new int[transpositionCount];
+		}
+		return slots;
+	});
+
+	ExpandedNode expand(int id) {
+		ExpandedNode node = expandedNodes.get()[id & (CACHED_NODES - 1)];
+		if (node.id != id) {
+			expand(id, node);
+		}
+		return node;
+	}
+
+	// Swapping the entries a at position i and b at position j > i only changes the Lehmer code at i..j:
+	// entry i becomes the later entries smaller than b (with a among them), entry j the later ones smaller
+	// than a, and each entry c in between counts a instead of b. The transpositions come in index order.
+	private void expand(int id, ExpandedNode node) {
+		byte[] perm = unrank(id);
+
+		// smaller[m][v]: the entries after position m smaller than v
+		int[][] smaller = new int[n][n + 1];
+		for (int m = n - 2; m >= 0; m--) {
+			for (int v = 1; v <= n; v++) {
+				smaller[m][v] = smaller[m + 1][v] + (perm[m + 1] < v? 1: 0);
+			}
+		}
+
+		int t = 0;
+		for (int i = 0; i < n; i++) {
+			int a = perm[i];
+			for (int j = i + 1; j < n; j++) {
+				int b = perm[j];
+				int rank = id + (smaller[i][b] + (a < b? 1: 0) - smaller[i][a]) * factorials[n - 1 - i]
+						+ (smaller[j][a] - smaller[j][b]) * factorials[n - 1 - j];
+				for (int m = i + 1; m < j; m++) {
+					rank += ((a < perm[m]? 1: 0) - (b < perm[m]? 1: 0)) * factorials[n - 1 - m];
+				}
+				node.targets[t++] = rank;
+			}
+		}
+		node.id = id;
+	}
+
+	// Position of the permutation in lexicographic order: the i-th entry of its Lehmer code counts
+	// the later entries smaller than entry i and weighs (n-i)!
+	int rank(byte[] perm) {
+		int rank = 0;
+		for (int i = 0; i < n; i++) {
+			int smaller = 0;
+			for (int j = i + 1; j < n; j++) {
+				if (perm[j] < perm[i])
+					smaller++;
+			}
+			rank = rank * (n - i) + smaller;
+		}
+		return rank;
+	}
+
+	// The i-th entry is the value whose position among the ones not used yet is the i-th entry of the Lehmer code
+	byte[] unrank(int rank) {
+		byte[] perm = new byte[n];
+
+		// Bit v-1 is set while the value v is unused
+		int unused = (1 << n) - 1;
+		for (int i = 0; i < n; i++) {
+			int weight = factorials[n - 1 - i];
+			int smaller = rank / weight;
+			rank %= weight;
+
+			int bits = unused;
+			for (int k = 0; k < smaller; k++) {
+				bits &= bits - 1;
+			}
+			int bit = Integer.numberOfTrailingZeros(bits);
+			unused &= ~(1 << bit);
+			perm[i] = (byte) (bit + 1);
+		}
+		return perm;
+	}
+
+	// Searches for r-rainbow cycles through the identity, which some image of every cycle passes
+	// (renaming the values maps the graph onto itself). Symmetric cycles are all reported.
+	List<List<byte[]>> findRainbowCycle(int r, int parallelism) {
+		lastSearch = new RainbowSearch(this, r, options, null);
+		List<List<byte[]>> foundCycles = new ArrayList<>();
+		for (int[] arcCycle : lastSearch.run(new int[] {0}, parallelism)) {
+			List<byte[]> cycle = new ArrayList<>();
+			for (int arc : arcCycle) {
+				cycle.add(unrank(getArcTarget(arc)));
+			}
+			foundCycles.add(cycle);
+		}
+		return foundCycles;
+	}
+}
@@ -1,41 +1,34 @@
+import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.stream.*;
 
 public class main {
 
-	public static boolean isRainbowCycle(List<String> list, int r, int n) {
-		// Create the edges
-		List<String> edges = new ArrayList<>();
-		for (int i = 1; i < n; i++) {
-			for (int j = i+1; j <=n; j++) {
-				edges.add(i+""+j);
-			}
-		}
-		
+	public static boolean isRainbowCycle(List<byte[]> list, int r, int n) {
 		// Check if the list contains any duplicates
-		for (int i = 1; i < list.size(); i++) {
-			for (int j = i+1; j < list.size(); j++) {
-				if (list.get(i).equals(list.get(j))) {
-					return false;
-				}
+		Set<ByteBuffer> seen = new HashSet<>();
+		for (byte[] perm : list) {
+			if (!seen.add(ByteBuffer.wrap(perm))) {
+				return false;
 			}
 		}
 		
 		// Cheack if each edge is used the correct number of times
-		Map<String, Integer> appearanceNumbers = new HashMap<>();
-		for(String e: edges) {
-			appearanceNumbers.put(e, 0);
-		}
-		
+		int[] appearanceNumbers = new int[n * (n - 1) / 2];
 		for(int i=0; i< list.size(); i++) {
 			int j = i+1;
 			if(j == list.size()) j = 0;
 			
-			String diff = getTransposition(list.get(i), list.get(j), n);
-			appearanceNumbers.put(diff, appearanceNumbers.get(diff)+1);	
+			int diff = Permutations.getTransposition(list.get(i), list.get(j), n);
+			if(diff == Permutations.NONE) {
+				return false;
+			}
+			appearanceNumbers[Permutations.index(diff, n)]++;
 		}
 		
-		for(String e: edges) {
-			if(appearanceNumbers.get(e) != r) {
+		for(int appearanceNumber: appearanceNumbers) {
+			if(appearanceNumber != r) {
 				return false;
 			}
 		}
@@ -43,117 +36,78 @@ public class main {
 		return true;
 	}
 	
-	public static List<String> get2RainbowCycle(int n){
-		List<String> inductionBase = Arrays.asList("123","321","231","213","312","132");
-		if(n == 3) return inductionBase;
+	public static List<byte[]> get2RainbowCycle(int n){
 		if(n < 3) return null;
 		
-		List<String> output = List.copyOf(inductionBase);
-		
-		for(int i=3; i<n; i++) {
-			output = applyInductionStep(output, i);
-		}
-		
+		List<byte[]> output = new ArrayList<>(n * (n - 1));
+		iterate2RainbowCycle(n).forEachRemaining(output::add);
 		return output;
-		
 	}
-	public static List<String> applyInductionStep(List<String> list, int n){
-		// Create the edges
-		List<String> edges = new ArrayList<>();
-		for (int i = 1; i < n; i++) {
-			for (int j = i+1; j <=n; j++) {
-				edges.add(""+i+j);
-			}
-		}
-		
-		// Add n+1 at the end of each permutation (only in Block A if n is odd)
-		// If n is odd, replace n with n+1 in each permutation of Block B and add n at the end of each such permutation
-		List<String> newCycle = new ArrayList<>();
-		for(int i=0; i< list.size(); i++) {
-			if(n%2==0 || i <=list.size()/2) {
-				newCycle.add(list.get(i) + (n+1));
-			}  else {
-				String mod = list.get(i);
-				mod = mod.replace(Character.forDigit(n, 10), Character.forDigit(n+1, 10));
-				mod += n;
-				newCycle.add(mod);
-			}
-		}
-		
-		
-		// Add the new permutations
-		for(int i=0; i< newCycle.size(); i++) {
-			int j = i+1;
-			if(j == newCycle.size()) j = 0;
-			
-			// Replace t_i with the triple t_i(n+1)
-			String diff = getTransposition(newCycle.get(i), newCycle.get(j), n);
-			for(int k=1; k<= n/2; k++) {
-				// if two consequtive permutations are connected with t_i
-				if(diff.equals(""+(2*k-1)+(2*k))) { 
-					String permBeforeInsertionPlace = newCycle.get(i);
-					
-					String firstTransposition = "";
-					firstTransposition += diff.charAt(0);
-					firstTransposition += Character.forDigit(n+1, 10);
-					
-					String firstNewPerm = applyTransposition(permBeforeInsertionPlace, firstTransposition);
-					String secondNewPerm = applyTransposition(firstNewPerm, diff);
-					
-					newCycle.add(i+1, firstNewPerm);
-					newCycle.add(i+2, secondNewPerm);
-					i+=2;
-				}
-			}
-		}
+	
+	// The permutations of the 2-rainbow cycle one by one, each induction step streaming 
+	// the output of the one before, so the cycle is never held as a whole
+	public static Iterator<byte[]> iterate2RainbowCycle(int n){
+		if(n > Permutations.MAX_N)
+			throw new IllegalArgumentException("n must be at most " + Permutations.MAX_N);
 		
-		// Apply (n,n+1) on last permutation of block A if n is odd 
-		if(n%2 == 1) {
-			String lastPermBlockA = newCycle.get(newCycle.size()/2);
-			String transposition  = ""+n;
-			transposition  +=n+1;
-			newCycle.add(newCycle.size()/2+1, applyTransposition(lastPermBlockA, transposition));
-			
-			newCycle.add(applyTransposition(newCycle.get(newCycle.size()-1), getTransposition(list.get(0), list.get(list.size()-1), n) ));
+		Iterator<byte[]> output = Permutations.parse("123","321","231","213","312","132").iterator();
+		for(int i=3; i<n; i++) {
+			output = new InductionStep(output, i);
 		}
 		
-		return newCycle;
+		return output;
 	}
 	
-	public static String getTransposition(String perm1, String perm2, int n) {
-		char[] s1 = perm1.toCharArray();
-		char[] s2 = perm2.toCharArray();
-		String diff = "";
-		for(int k=0; k<n ;k++) {
-			if(s1[k] != s2[k]) {
-				diff += (k+1);
-			}
-		}
-		return diff;
+	public static Stream<byte[]> stream2RainbowCycle(int n){
+		Spliterator<byte[]> spliterator = Spliterators.spliterator(iterate2RainbowCycle(n), (long) n * (n - 1), 
+				Spliterator.ORDERED | Spliterator.NONNULL);
+		return StreamSupport.stream(spliterator, false);
 	}
 	
-	public static String applyTransposition(String inputPerm, String transposition) {
-		char[] permAsArray = inputPerm.toCharArray();
-		char tmp = permAsArray[Character.getNumericValue(transposition.charAt(1)-1)];
-		permAsArray[Character.getNumericValue(transposition.charAt(1))-1] = permAsArray[Character.getNumericValue(transposition.charAt(0))-1];
-		permAsArray[Character.getNumericValue(transposition.charAt(0))-1] = tmp;
-		
-		return new String(permAsArray);
+	// One pass over the list, see InductionStep
+	public static List<byte[]> applyInductionStep(List<byte[]> list, int n){
+		int resultSize = InductionStep.getResultSize(list, n);
+		List<byte[]> newCycle = new ArrayList<>(resultSize);
+		new InductionStep(list.iterator(), list.size(), resultSize, n).forEachRemaining(newCycle::add);
+		return newCycle;
 	}
 	
 	
-	public static void main(String[] args) {	
-		List<String> rainbowCycle = get2RainbowCycle(4);
+	public static void main(String[] args) throws IOException {	
+		// --search n r looks for r-rainbow cycles in the transposition graph instead of constructing one
+		if(args.length >= 3 && args[0].equals("--search")) {
+			int n = Integer.valueOf(args[1]), r = Integer.valueOf(args[2]);
+			TranspositionGraph graph = new TranspositionGraph(n);
+			graph.options.termination = Termination.valueOf(System.getProperty("termination", "PER_START_NODE").toUpperCase());
+			graph.options.cycleLimit = Integer.getInteger("cycleLimit", 0);
+			graph.options.timeLimit = Integer.getInteger("timeLimit", 0);
+			int parallelism = args.length > 3? Integer.valueOf(args[3]): Runtime.getRuntime().availableProcessors();
+			for (List<byte[]> cycle : graph.findRainbowCycle(r, parallelism)) {
+				System.out.println(cycle.stream().map(Permutations::toString).collect(Collectors.joining(" ")) 
+						+ (isRainbowCycle(cycle, r, n)? "": " (not a rainbow cycle)"));
+			}
+			return;
+		}
+		
+		// With n and an output file, the cycle goes straight to the file, one permutation per line
+		if(args.length == 2) {
+			try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(args[1])))) {
+				stream2RainbowCycle(Integer.valueOf(args[0])).forEach(perm -> writer.println(Permutations.toString(perm)));
+			}
+			return;
+		}
+		
+		List<byte[]> rainbowCycle = get2RainbowCycle(4);
 		if(isRainbowCycle(rainbowCycle, 2, 4)){
 			System.out.println("A 2-rainbow cycle for n=9 was successfully produced.");
 			System.out.println("Block A:");
 			for (int i = 0; i < rainbowCycle.size()/2; i++) {
-				System.out.println(rainbowCycle.get(i));
+				System.out.println(Permutations.toString(rainbowCycle.get(i)));
 			}
 			
 			System.out.println("Block B:");
 			for (int i = rainbowCycle.size()/2; i < rainbowCycle.size(); i++) {
-				System.out.println(rainbowCycle.get(i));
+				System.out.println(Permutations.toString(rainbowCycle.get(i)));
 			}
 		}
 
@@ -0,0 +1,78 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// Runs the benchmark suites of the labs: times each body after some warmup runs, keeps the median and
+// compares the medians with stored baseline results. Each lab's Benchmark only holds what it measures.
+// Options: -Dwarmup=[runs] -Druns=[runs] -Dbaseline=[file] (benchmark-baseline.txt by default) -Dsave=[file]
+class BenchmarkHarness {
+	interface Body {
+		int run() throws Exception;
+	}
+
+	// Results of the measured code end up here, so the JIT can't leave it out
+	static int sink;
+
+	int warmupRuns;
+	int measuredRuns;
+
+	// Median time of each benchmark in ns, in the order they ran
+	Map<String, Long> results = new LinkedHashMap<>();
+
+	// The run counts are the defaults for -Dwarmup and -Druns
+	BenchmarkHarness(int warmupRuns, int measuredRuns) {
+		this.warmupRuns = Integer.getInteger("warmup", warmupRuns);
+		this.measuredRuns = Integer.getInteger("runs", measuredRuns);
+	}
+
+	void measure(String name, Body body) throws Exception {
+		long[] times = new long[measuredRuns];
+
+		// Output isn't part of what we measure
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			for (int run = 0; run < warmupRuns + measuredRuns; run++) {
+				long start = System.nanoTime();
+				sink += body.run();
+				if (run >= warmupRuns)
+					times[run - warmupRuns] = System.nanoTime() - start;
+			}
+		} finally {
+			System.setOut(out);
+		}
+
+		Arrays.sort(times);
+		results.put(name, times[measuredRuns / 2]);
+	}
+
+	// Prints each median next to the baseline and saves the results if asked to.
+	// The baseline file holds one "name<TAB>median ns" line per benchmark.
+	void compareWithBaseline() throws IOException {
+		Map<String, Long> baseline = new HashMap<>();
+		Path baselineFile = Paths.get(System.getProperty("baseline", "benchmark-baseline.txt"));
+		if (Files.exists(baselineFile)) {
+			for (String line : Files.readAllLines(baselineFile)) {
+				String[] fields = line.split("\t");
+				if (fields.length == 2 && !line.startsWith("#"))
+					baseline.put(fields[0], Long.valueOf(fields[1]));
+			}
+		}
+
+		for (Map.Entry<String, Long> result : results.entrySet()) {
+			Long before = baseline.get(result.getKey());
+			String comparison = before == null? "": String.format("  (baseline %.2f ms, %.2fx)", before / 1e6, (double) before / result.getValue());
+			System.out.printf("%-40s %10.2f ms%s%n", result.getKey(), result.getValue() / 1e6, comparison);
+		}
+
+		String saveFile = System.getProperty("save");
+		if (saveFile != null) {
+			List<String> lines = new ArrayList<>();
+			lines.add("# Median times in ns, from java Benchmark with " + warmupRuns + " warmup and " + measuredRuns + " measured runs");
+			for (Map.Entry<String, Long> result : results.entrySet()) {
+				lines.add(result.getKey() + "\t" + result.getValue());
+			}
+			Files.write(Paths.get(saveFile), lines);
+		}
+	}
+}
@@ -0,0 +1,154 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// A snapshot of a running rainbow cycle search: the cycles found so far (or only their keys, when the
+// search counts them) and, for every task that isn't done yet, the path it stands on and the next arc
+// to try at each depth below its root.
+// It's written to a temporary file that replaces the previous checkpoint only once complete.
+class Checkpoint {
+	static final int MAGIC = 0x52434b50;
+	static final int VERSION = 3;
+
+	// Identify the graph and search the checkpoint belongs to
+	int nodeCount;
+	int arcCount;
+	int graphHash;
+	int r;
+	int symmetries;
+
+	// Tasks done with a start node aren't saved, so a search stopping at other times would miss cycles
+	Termination termination;
+
+	// Arc ids of each found cycle, or the keys of the cycles counted
+	List<int[]> cycles = new ArrayList<>();
+	List<Object> cycleKeys = new ArrayList<>();
+	List<TaskState> tasks = new ArrayList<>();
+
+	static class TaskState {
+		int startNode;
+
+		// Arcs taken from the start node. The first rootDepth of them are the task's prefix.
+		int rootDepth;
+		int[] path;
+
+		// Next arc to try at depth rootDepth..path.length, or null if the task didn't start yet
+		int[] nextArcs;
+	}
+
+	Checkpoint(LabelledGraph graph, int r, int symmetries, Termination termination) {
+		this.nodeCount = graph.getNodeCount();
+		this.arcCount = graph.getFirstArc(nodeCount);
+
+		// As Arrays.hashCode of the arc targets and labels, so older checkpoints still match
+		int targetHash = 1, labelHash = 1;
+		for (int arc = 0; arc < arcCount; arc++) {
+			targetHash = 31 * targetHash + graph.getArcTarget(arc);
+			labelHash = 31 * labelHash + graph.getArcLabel(arc);
+		}
+		this.graphHash = 31 * targetHash + labelHash;
+		this.r = r;
+		this.symmetries = symmetries;
+		this.termination = termination;
+	}
+
+	boolean belongsTo(Checkpoint other) {
+		return nodeCount == other.nodeCount && arcCount == other.arcCount && graphHash == other.graphHash
+				&& r == other.r && symmetries == other.symmetries && termination == other.termination;
+	}
+
+	void write(Path file) throws IOException {
+		Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+		try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(nodeCount);
+			out.writeInt(arcCount);
+			out.writeInt(graphHash);
+			out.writeInt(r);
+			out.writeInt(symmetries);
+			out.writeUTF(termination.name());
+
+			out.writeInt(cycles.size());
+			for (int[] cycle : cycles) {
+				writeInts(out, cycle);
+			}
+			out.writeInt(cycleKeys.size());
+			for (Object key : cycleKeys) {
+				out.writeObject(key);
+			}
+
+			out.writeInt(tasks.size());
+			for (TaskState task : tasks) {
+				out.writeInt(task.startNode);
+				out.writeInt(task.rootDepth);
+				writeInts(out, task.path);
+				out.writeBoolean(task.nextArcs != null);
+				if (task.nextArcs != null)
+					writeInts(out, task.nextArcs);
+			}
+		}
+		Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// Reads a checkpoint written for the given graph and search
+	static Checkpoint read(Path file, Checkpoint expected) throws IOException {
+		try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException(file + " is no checkpoint of this version");
+
+			Checkpoint checkpoint = new Checkpoint(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), 
+					Termination.valueOf(in.readUTF()));
+			if (!checkpoint.belongsTo(expected))
+				throw new IOException(file + " was written for another graph, r, symmetry setting or termination mode (its mode is " 
+						+ checkpoint.termination.name().toLowerCase() + ")");
+
+			int cycleCount = in.readInt();
+			for (int i = 0; i < cycleCount; i++) {
+				checkpoint.cycles.add(readInts(in));
+			}
+			int keyCount = in.readInt();
+			for (int i = 0; i < keyCount; i++) {
+				checkpoint.cycleKeys.add(in.readObject());
+			}
+
+			int taskCount = in.readInt();
+			for (int i = 0; i < taskCount; i++) {
+				TaskState task = new TaskState();
+				task.startNode = in.readInt();
+				task.rootDepth = in.readInt();
+				task.path = readInts(in);
+				if (in.readBoolean())
+					task.nextArcs = readInts(in);
+				checkpoint.tasks.add(task);
+			}
+			return checkpoint;
+		} catch (ClassNotFoundException e) {
+			throw new IOException(file + " holds cycle keys of another search", e);
+		}
+	}
+
+	private Checkpoint(int nodeCount, int arcCount, int graphHash, int r, int symmetries, Termination termination) {
+		this.nodeCount = nodeCount;
+		this.arcCount = arcCount;
+		this.graphHash = graphHash;
+		this.r = r;
+		this.symmetries = symmetries;
+		this.termination = termination;
+	}
+
+	private static void writeInts(DataOutput out, int[] values) throws IOException {
+		out.writeInt(values.length);
+		for (int value : values) {
+			out.writeInt(value);
+		}
+	}
+
+	private static int[] readInts(DataInput in) throws IOException {
+		int[] values = new int[in.readInt()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = in.readInt();
+		}
+		return values;
+	}
+}
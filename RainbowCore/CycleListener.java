@@ -0,0 +1,6 @@
+// Told about every cycle a search keeps, as soon as it's found. Unless the search keys its cycles
+// another way, the arc ids start with the arc leading to the cycle's smallest node.
+// May be called by several workers at once.
+interface CycleListener {
+	void cycleFound(int cycleNumber, int[] arcCycle);
+}
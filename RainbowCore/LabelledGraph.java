@@ -0,0 +1,12 @@
+// A directed graph with labelled arcs, the way a rainbow cycle search sees it. Nodes are 0..getNodeCount()-1
+// and labels 0..getLabelCount()-1. Arcs have global ids too: those leaving node v are getFirstArc(v)..getFirstArc(v+1)-1,
+// so getFirstArc(getNodeCount()) is the number of arcs. A rainbow cycle takes every label exactly r times.
+//
+// Flip graphs of triangulations keep these as arrays, graphs with as many arcs at each node may compute them instead.
+interface LabelledGraph {
+	int getNodeCount();
+	int getLabelCount();
+	int getFirstArc(int node);
+	int getArcTarget(int arc);
+	int getArcLabel(int arc);
+}
@@ -0,0 +1,438 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Finds rainbow cycles by joining two halves instead of walking every path of the full length.
+// From each start node s, the simple paths of forwardLength arcs leaving s and those of backwardLength
+// arcs entering s are enumerated. A forward half ending in m closes a rainbow cycle with each backward
+// half starting in m that takes every label exactly as often as the forward half lacks to reach r
+// and shares no other node with it. So the backward halves go into a hash table by (m, label counts),
+// and every forward half looks up the counts it lacks.
+//
+// When the backward halves of a start node outgrow the memory budget, the join turns into a grace hash
+// join: both sides are written into partitions on disk by the hash of their key, and then the partitions
+// are joined one by one. Checkpoints aren't taken, the halves would have to be enumerated again anyway.
+class MeetInTheMiddle {
+	static final int PARTITIONS = 64;
+
+	RainbowSearch search;
+	int forwardLength;
+	int backwardLength;
+
+	// Bytes the halves of one start node may take in memory, and where the partitions go beyond that
+	long memoryBudget;
+	Path spillDirectory;
+
+	// The graph in compressed sparse row form, in both directions. The arcs leaving node v are 
+	// outArcs[arcOffsets[v]..arcOffsets[v+1]-1], which is just their ids, leading to arcTargets[a] and labelled arcLabels[a]. 
+	// The arcs entering v are inArcs[inOffsets[v]..inOffsets[v+1]-1], each coming from arcSources[a].
+	int[] arcOffsets;
+	int[] arcTargets;
+	int[] arcLabels;
+	int[] outArcs;
+	int[] inOffsets;
+	int[] inArcs;
+	int[] arcSources;
+
+	MeetInTheMiddle(RainbowSearch search, long memoryBudget, Path spillDirectory) {
+		this.search = search;
+		this.memoryBudget = memoryBudget;
+		this.spillDirectory = spillDirectory;
+		this.forwardLength = search.cycleLength / 2;
+		this.backwardLength = search.cycleLength - forwardLength;
+
+		LabelledGraph graph = search.graph;
+		int nodeCount = graph.getNodeCount();
+		int arcCount = graph.getFirstArc(nodeCount);
+		arcOffsets = new int[nodeCount + 1];
+		arcTargets = new int[arcCount];
+		arcLabels = new int[arcCount];
+		outArcs = new int[arcCount];
+		arcSources = new int[arcCount];
+		for (int v = 0; v < nodeCount; v++) {
+			arcOffsets[v + 1] = graph.getFirstArc(v + 1);
+			for (int arc = arcOffsets[v]; arc < arcOffsets[v + 1]; arc++) {
+				arcTargets[arc] = graph.getArcTarget(arc);
+				arcLabels[arc] = graph.getArcLabel(arc);
+				outArcs[arc] = arc;
+				arcSources[arc] = v;
+			}
+		}
+
+		// Counting sort of the arcs by their targets
+		inOffsets = new int[nodeCount + 1];
+		for (int target : arcTargets) {
+			inOffsets[target + 1]++;
+		}
+		for (int v = 0; v < nodeCount; v++) {
+			inOffsets[v + 1] += inOffsets[v];
+		}
+		inArcs = new int[arcCount];
+		int[] position = Arrays.copyOf(inOffsets, nodeCount);
+		for (int arc = 0; arc < arcCount; arc++) {
+			inArcs[position[arcTargets[arc]]++] = arc;
+		}
+	}
+
+	// Joins the halves of every start node, one task per start node with an equal share of the budget
+	void run(int[] startNodes, ForkJoinPool pool) {
+		System.out.println("Meet in the middle: halves of " + forwardLength + " and " + backwardLength + " arcs");
+		if (forwardLength == 0)
+			return;
+
+		List<HalfPathJoin> tasks = new ArrayList<>();
+		long taskBudget = memoryBudget / pool.getParallelism();
+		for (int startNode : startNodes) {
+			tasks.add(new HalfPathJoin(this, startNode, taskBudget));
+		}
+		pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+	}
+}
+
+// A backward half's key: the node it starts from and how often it takes each label
+class HalfKey {
+	int endpoint;
+	byte[] counts;
+	int hash;
+
+	HalfKey(int endpoint, byte[] counts) {
+		this.endpoint = endpoint;
+		this.counts = counts;
+		this.hash = 31 * Arrays.hashCode(counts) + endpoint;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		HalfKey other = (HalfKey) obj;
+		return this == other || (hash == other.hash && endpoint == other.endpoint && Arrays.equals(counts, other.counts));
+	}
+}
+
+// Enumerates and joins the halves of the cycles through one start node
+class HalfPathJoin extends RecursiveAction {
+	// Steps between two flushes of the counters to the search metrics and looks at the time limit
+	static final int POLL_MASK = (1 << 12) - 1;
+
+	// Estimated bytes of a key and of a list entry in the table
+	static final int KEY_BYTES = 96;
+	static final int ENTRY_BYTES = 24;
+
+	MeetInTheMiddle engine;
+	RainbowSearch search;
+	int startNode;
+	long memoryBudget;
+
+	// The backward halves in cycle order (from their endpoint to the start node) by key,
+	// and the bytes they take as far as known
+	Map<HalfKey, List<int[]>> table = new HashMap<>();
+	long tableBytes;
+
+	// Set once the table outgrew the budget. Partition files of both sides, by the hash of the key.
+	boolean spilled;
+	Path[] backwardFiles, forwardFiles;
+	DataOutputStream[] backwardParts, forwardParts;
+
+	// Per path being enumerated: its nodes but the start node, and how often it takes each label
+	boolean[] visited;
+	int[] timesFound;
+	int[] cycle;
+	boolean done;
+
+	// Counted since the last flush to the search metrics
+	long expandedNodes, skippedVisited, skippedFull;
+	int steps;
+
+	HalfPathJoin(MeetInTheMiddle engine, int startNode, long memoryBudget) {
+		this.engine = engine;
+		this.search = engine.search;
+		this.startNode = startNode;
+		this.memoryBudget = memoryBudget;
+	}
+
+	@Override
+	protected void compute() {
+		System.out.println("Started: start node " + startNode);
+		visited = new boolean[search.graph.getNodeCount()];
+		timesFound = new int[search.graph.getLabelCount()];
+		cycle = new int[search.cycleLength];
+
+		try {
+			enumerate(false, engine.backwardLength);
+			enumerate(true, engine.forwardLength);
+			if (spilled)
+				joinPartitions();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			table = null;
+			if (spilled)
+				deletePartitions();
+		}
+
+		search.metrics.add(startNode, 0, expandedNodes, 0, skippedVisited, skippedFull, 0);
+		System.out.println("Finished: start node " + startNode);
+	}
+
+	private boolean isStopped() {
+		return done || search.cancelled;
+	}
+
+	// Walks the simple paths of the given length leaving (forward) or entering the start node that avoid
+	// the start node and take no label more than r times. Each complete path is handed to probe or addBackward.
+	private void enumerate(boolean forward, int length) throws IOException {
+		int[] offsets = forward? engine.arcOffsets: engine.inOffsets;
+		int[] arcs = forward? engine.outArcs: engine.inArcs;
+		int[] ends = forward? engine.arcTargets: engine.arcSources;
+		int[] arcLabels = engine.arcLabels;
+		int r = search.r;
+
+		int[] arcStack = new int[length];
+		int[] nextArc = new int[length + 1];
+		int depth = 0;
+		int currentNode = startNode;
+		nextArc[0] = offsets[currentNode];
+		while (!isStopped()) {
+			if ((++steps & POLL_MASK) == 0) {
+				if (search.timeLimited && System.nanoTime() - search.deadline > 0) {
+					search.cancel(true);
+					break;
+				}
+				search.metrics.add(startNode, depth, expandedNodes, 0, skippedVisited, skippedFull, 0);
+				expandedNodes = skippedVisited = skippedFull = 0;
+			}
+
+			if (nextArc[depth] < offsets[currentNode + 1]) {
+				int arc = arcs[nextArc[depth]++];
+				int end = ends[arc];
+				if (end == startNode || visited[end]) {
+					skippedVisited++;
+					continue;
+				}
+				if (timesFound[arcLabels[arc]] >= r) {
+					skippedFull++;
+					continue;
+				}
+
+				expandedNodes++;
+				timesFound[arcLabels[arc]]++;
+				visited[end] = true;
+				arcStack[depth++] = arc;
+				if (depth < length) {
+					currentNode = end;
+					nextArc[depth] = offsets[currentNode];
+					continue;
+				}
+
+				if (forward)
+					probe(arcStack, end);
+				else
+					addBackward(arcStack, end);
+
+				// Complete, try the next arc instead
+				depth--;
+				timesFound[arcLabels[arc]]--;
+				visited[end] = false;
+			} else {
+				if (depth == 0)
+					break;
+
+				int arc = arcStack[--depth];
+				timesFound[arcLabels[arc]]--;
+				visited[ends[arc]] = false;
+				currentNode = depth == 0? startNode: ends[arcStack[depth - 1]];
+			}
+		}
+	}
+
+	// Puts a backward half, given by the arcs from the start node backwards, into the table
+	private void addBackward(int[] arcStack, int endpoint) throws IOException {
+		int length = arcStack.length;
+		int[] half = new int[length];
+		for (int i = 0; i < length; i++) {
+			half[i] = arcStack[length - 1 - i];
+		}
+
+		HalfKey key = getKey(endpoint, timesFound, false);
+		if (spilled) {
+			writeInts(backwardParts[partition(key)], half);
+			return;
+		}
+
+		List<int[]> halves = table.get(key);
+		if (halves == null) {
+			halves = new ArrayList<>();
+			table.put(key, halves);
+			tableBytes += KEY_BYTES + timesFound.length;
+		}
+		halves.add(half);
+		tableBytes += ENTRY_BYTES + 4 * length;
+
+		if (tableBytes > memoryBudget)
+			spill();
+	}
+
+	// Joins a forward half ending in endpoint with all backward halves that complete it.
+	// visited marks the nodes of the forward half, timesFound counts its labels.
+	private void probe(int[] forwardHalf, int endpoint) throws IOException {
+		HalfKey need = getKey(endpoint, timesFound, true);
+		if (spilled) {
+			writeInts(forwardParts[partition(need)], forwardHalf);
+			return;
+		}
+		join(forwardHalf, table.get(need));
+	}
+
+	private void join(int[] forwardHalf, List<int[]> backwardHalves) {
+		if (backwardHalves == null)
+			return;
+
+		int[] arcTargets = engine.arcTargets;
+		for (int[] backwardHalf : backwardHalves) {
+			// The last arc enters the start node, all other targets must be new
+			boolean disjoint = true;
+			for (int i = 0; i < backwardHalf.length - 1 && disjoint; i++) {
+				disjoint = !visited[arcTargets[backwardHalf[i]]];
+			}
+			if (!disjoint)
+				continue;
+
+			System.arraycopy(forwardHalf, 0, cycle, 0, forwardHalf.length);
+			System.arraycopy(backwardHalf, 0, cycle, forwardHalf.length, backwardHalf.length);
+			search.addCycle(cycle);
+			if (search.termination == Termination.PER_START_NODE) {
+				done = true;
+				return;
+			}
+		}
+	}
+
+	// The key of a backward half with the given counts, or for complement the key of the backward halves completing them
+	private HalfKey getKey(int endpoint, int[] counts, boolean complement) {
+		byte[] key = new byte[counts.length];
+		for (int d = 0; d < counts.length; d++) {
+			key[d] = (byte) (complement? search.r - counts[d]: counts[d]);
+		}
+		return new HalfKey(endpoint, key);
+	}
+
+	private static int partition(HalfKey key) {
+		return Math.floorMod(key.hash, MeetInTheMiddle.PARTITIONS);
+	}
+
+	// Moves the table into the partition files, where all halves go from now on
+	private void spill() throws IOException {
+		int partitions = MeetInTheMiddle.PARTITIONS;
+		System.out.printf("Start node %d: backward halves exceed %.0f MB, joining %d partitions on disk%n",
+				startNode, memoryBudget / 1e6, partitions);
+
+		Files.createDirectories(engine.spillDirectory);
+		backwardFiles = new Path[partitions];
+		forwardFiles = new Path[partitions];
+		backwardParts = new DataOutputStream[partitions];
+		forwardParts = new DataOutputStream[partitions];
+		for (int p = 0; p < partitions; p++) {
+			backwardFiles[p] = Files.createTempFile(engine.spillDirectory, "rainbow-" + startNode + "-backward-", ".bin");
+			forwardFiles[p] = Files.createTempFile(engine.spillDirectory, "rainbow-" + startNode + "-forward-", ".bin");
+			backwardParts[p] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(backwardFiles[p])));
+			forwardParts[p] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(forwardFiles[p])));
+		}
+		spilled = true;
+
+		for (Map.Entry<HalfKey, List<int[]>> entry : table.entrySet()) {
+			DataOutputStream out = backwardParts[partition(entry.getKey())];
+			for (int[] half : entry.getValue()) {
+				writeInts(out, half);
+			}
+		}
+		table.clear();
+		tableBytes = 0;
+	}
+
+	// Both sides of a key fall into the same partition. So each partition's backward halves are
+	// read into the table and its forward halves looked up there, restoring their visited nodes and counts.
+	private void joinPartitions() throws IOException {
+		for (int p = 0; p < MeetInTheMiddle.PARTITIONS; p++) {
+			backwardParts[p].close();
+			forwardParts[p].close();
+		}
+
+		int[] arcTargets = engine.arcTargets;
+		int[] arcLabels = engine.arcLabels;
+		int[] forwardHalf = new int[engine.forwardLength];
+		int[] backwardCounts = new int[timesFound.length];
+		for (int p = 0; p < MeetInTheMiddle.PARTITIONS && !isStopped(); p++) {
+			table.clear();
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(backwardFiles[p])))) {
+				int[] half;
+				while ((half = readInts(in, engine.backwardLength)) != null) {
+					Arrays.fill(backwardCounts, 0);
+					for (int arc : half) {
+						backwardCounts[arcLabels[arc]]++;
+					}
+					HalfKey key = getKey(engine.arcSources[half[0]], backwardCounts, false);
+					table.computeIfAbsent(key, k -> new ArrayList<>()).add(half);
+				}
+			}
+
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(forwardFiles[p])))) {
+				while (!isStopped() && readInts(in, forwardHalf) != null) {
+					for (int arc : forwardHalf) {
+						visited[arcTargets[arc]] = true;
+						timesFound[arcLabels[arc]]++;
+					}
+					join(forwardHalf, table.get(getKey(arcTargets[forwardHalf[forwardHalf.length - 1]], timesFound, true)));
+					for (int arc : forwardHalf) {
+						visited[arcTargets[arc]] = false;
+						timesFound[arcLabels[arc]]--;
+					}
+				}
+			}
+		}
+		table.clear();
+	}
+
+	private void deletePartitions() {
+		for (int p = 0; p < MeetInTheMiddle.PARTITIONS; p++) {
+			try {
+				if (backwardParts[p] != null)
+					backwardParts[p].close();
+				if (forwardParts[p] != null)
+					forwardParts[p].close();
+				if (backwardFiles[p] != null)
+					Files.deleteIfExists(backwardFiles[p]);
+				if (forwardFiles[p] != null)
+					Files.deleteIfExists(forwardFiles[p]);
+			} catch (IOException e) {
+				System.out.println("Couldn't delete partition " + p + ": " + e);
+			}
+		}
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		for (int value : values) {
+			out.writeInt(value);
+		}
+	}
+
+	// Fills the given array, or returns null at the end of the file
+	private static int[] readInts(DataInputStream in, int[] values) throws IOException {
+		try {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = in.readInt();
+			}
+			return values;
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+
+	private static int[] readInts(DataInputStream in, int length) throws IOException {
+		return readInts(in, new int[length]);
+	}
+}
@@ -0,0 +1,6 @@
+// Ends the paths of a search that looks for paths instead of cycles, see RainbowSearch.searchPaths.
+// Asked once a path took every label as often as it should, with the arcs from the start node in arcPath
+// and the node its last arc enters, which isn't on the path yet. May be called by several workers at once.
+interface PathEnd {
+	boolean endsWith(int[] arcPath, int target);
+}
@@ -0,0 +1,801 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.Function;
+
+// State shared by all tasks of one rainbow cycle search on a labelled graph. 
+// Nothing here knows what the nodes and labels stand for: the labs hand their graph in through 
+// LabelledGraph and get the cycles back as arc ids, through a CycleListener while the search 
+// runs and from run() once it's done.
+class RainbowSearch {
+	LabelledGraph graph;
+	List<int[]> foundArcCycles = Collections.synchronizedList(new ArrayList<>());
+	Set<Object> foundCycleKeys = ConcurrentHashMap.newKeySet();
+	AtomicInteger foundCyclesCounter = new AtomicInteger();
+	int r;
+	CycleListener cycleListener;
+	
+	// A cycle takes label l labelTargets[l] times, r by default, and so has cycleLength arcs. 
+	// Searches for paths instead end them where pathEnd says, see searchPaths.
+	int[] labelTargets;
+	int cycleLength;
+	PathEnd pathEnd;
+	
+	// Maps a cycle, given by its arc ids, to a key shared by all cycles to be reported only once. 
+	// By default the CycleKey of its nodes that's smallest under nodeSymmetries.
+	Function<int[], Object> cycleKeys = this::getCycleKey;
+	
+	// Tasks may hand subtrees rooted above this depth over to idle workers
+	int splitDepth = 8;
+	
+	boolean feasibilityPruning;
+	
+	// The labels that arcs entering node v carry are nodeLabels[nodeLabelOffsets[v]..nodeLabelOffsets[v+1]-1], 
+	// labelNodeCounts[l] is the number of nodes an arc labelled l can enter. Only built for feasibilityPruning.
+	int[] nodeLabelOffsets;
+	int[] nodeLabels;
+	int[] labelNodeCounts;
+	
+	// Dead states of the search, or null to search every state
+	TranspositionTable transpositionTable;
+	
+	// Joins half-length paths instead of walking the full ones, see MeetInTheMiddle
+	boolean meetInTheMiddle;
+	long memoryBudget;
+	Path spillDirectory;
+	
+	// Tasks leave their loop as soon as they see cancelled. The search is cancelled when cycleLimit 
+	// cycles were found (0 for no limit) or, if timeLimited, a task finds the deadline (System.nanoTime()) passed.
+	Termination termination;
+	int cycleLimit;
+	boolean timeLimited;
+	long deadline;
+	volatile boolean cancelled;
+	volatile boolean timedOut;
+	
+	SearchMetrics metrics;
+	
+	// Seconds between two progress reports, 0 for none
+	int reportInterval;
+	
+	// Permutations of the node ids mapping the graph onto itself, the identity first, or null for none
+	int[][] nodeSymmetries;
+	
+	// Every checkpointInterval seconds, the state of all tasks not done yet goes to checkpointFile. 
+	// Tasks register before they are forked and publish their state once they see a new checkpointEpoch.
+	Path checkpointFile;
+	int checkpointInterval;
+	boolean resume;
+	Set<SearchTask> activeTasks = ConcurrentHashMap.newKeySet();
+	volatile int checkpointEpoch;
+	
+	RainbowSearch(LabelledGraph graph, int r, SearchOptions options, int[][] nodeSymmetries) {
+		this.graph = graph;
+		this.nodeSymmetries = nodeSymmetries;
+		this.r = r;
+		this.labelTargets = new int[graph.getLabelCount()];
+		Arrays.fill(labelTargets, r);
+		this.cycleLength = graph.getLabelCount() * r;
+		this.feasibilityPruning = options.feasibilityPruning;
+		if (options.checkpointFile != null)
+			this.checkpointFile = Paths.get(options.checkpointFile);
+		this.checkpointInterval = options.checkpointInterval;
+		this.resume = options.resume;
+		this.reportInterval = options.reportInterval;
+		this.meetInTheMiddle = options.meetInTheMiddle;
+		this.memoryBudget = options.memoryBudget;
+		this.spillDirectory = Paths.get(options.spillDirectory);
+		if (options.transpositionTableSize > 0)
+			this.transpositionTable = new TranspositionTable(options.transpositionTableSize, graph.getNodeCount(), 
+					graph.getLabelCount(), r);
+		if (meetInTheMiddle)
+			this.checkpointFile = null;
+		this.termination = options.termination;
+		if (termination == Termination.FIRST)
+			this.cycleLimit = 1;
+		else if (termination == Termination.LIMIT)
+			this.cycleLimit = options.cycleLimit;
+		this.timeLimited = options.timeLimit > 0;
+		this.deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.timeLimit);
+		if (feasibilityPruning)
+			indexLabels();
+	}
+	
+	// Lets the search look for paths from the start nodes that take each label l labelTargets[l] times 
+	// (at most r) and end where pathEnd accepts their last arc, instead of rainbow cycles. 
+	// The cycles it keeps and reports are then these paths. They can't be joined in the middle.
+	void searchPaths(int[] labelTargets, PathEnd pathEnd) {
+		this.labelTargets = labelTargets;
+		this.cycleLength = Arrays.stream(labelTargets).sum();
+		this.pathEnd = pathEnd;
+		this.meetInTheMiddle = false;
+	}
+	
+	// Indexes which labels can appear on an arc entering each node: the labels of its incoming arcs 
+	// are put in place by a counting sort on the targets, then sorted and made distinct per node
+	private void indexLabels() {
+		int nodeCount = graph.getNodeCount();
+		int arcCount = graph.getFirstArc(nodeCount);
+		int[] inOffsets = new int[nodeCount + 1];
+		for (int arc = 0; arc < arcCount; arc++) {
+			inOffsets[graph.getArcTarget(arc) + 1]++;
+		}
+		for (int v = 0; v < nodeCount; v++) {
+			inOffsets[v + 1] += inOffsets[v];
+		}
+		int[] inLabels = new int[arcCount];
+		int[] position = Arrays.copyOf(inOffsets, nodeCount);
+		for (int arc = 0; arc < arcCount; arc++) {
+			inLabels[position[graph.getArcTarget(arc)]++] = graph.getArcLabel(arc);
+		}
+		
+		nodeLabelOffsets = new int[nodeCount + 1];
+		labelNodeCounts = new int[graph.getLabelCount()];
+		int size = 0;
+		for (int v = 0; v < nodeCount; v++) {
+			Arrays.sort(inLabels, inOffsets[v], inOffsets[v + 1]);
+			for (int i = inOffsets[v]; i < inOffsets[v + 1]; i++) {
+				if (i == inOffsets[v] || inLabels[i] != inLabels[i - 1]) {
+					inLabels[size++] = inLabels[i];
+					labelNodeCounts[inLabels[i]]++;
+				}
+			}
+			nodeLabelOffsets[v + 1] = size;
+		}
+		nodeLabels = Arrays.copyOf(inLabels, size);
+	}
+	
+	// Searches from each of the start nodes and returns the cycles kept (none when counting), see Termination
+	List<int[]> run(int[] startNodes, int parallelism) {
+		// Created first, so the statistics can be asked for even if the search doesn't start
+		metrics = new SearchMetrics(parallelism, cycleLength);
+		metrics.transpositionTable = transpositionTable;
+		
+		// Each arc of a cycle enters another node
+		if (feasibilityPruning && cycleLength > graph.getNodeCount()) {
+			System.out.println("No " + r + "-rainbow cycle fits into " + graph.getNodeCount() + " nodes");
+			return foundArcCycles;
+		}
+		
+		List<SearchTask> startTasks = new ArrayList<>();
+		if (resume && checkpointFile != null && Files.exists(checkpointFile)) {
+			try {
+				startTasks = resumeTasks(Checkpoint.read(checkpointFile, newCheckpoint()));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		} else {
+			for (int startNode : startNodes) {
+				startTasks.add(new SearchTask(this, startNode, new AtomicBoolean(), new int[0]));
+			}
+		}
+		for (SearchTask startTask : startTasks) {
+			register(startTask);
+		}
+		
+		// With a single worker, splitting only reorders the search
+		if (parallelism == 1)
+			splitDepth = 0;
+		
+		ScheduledExecutorService checkpointer = null;
+		if (checkpointFile != null && checkpointInterval > 0) {
+			checkpointer = Executors.newSingleThreadScheduledExecutor(task -> {
+				Thread thread = new Thread(task, "Checkpoint writer");
+				thread.setDaemon(true);
+				return thread;
+			});
+			checkpointer.scheduleWithFixedDelay(this::writeCheckpoint, checkpointInterval, checkpointInterval, TimeUnit.SECONDS);
+		}
+		
+		ScheduledExecutorService reporter = null;
+		if (reportInterval > 0) {
+			reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+				Thread thread = new Thread(task, "Progress reporter");
+				thread.setDaemon(true);
+				return thread;
+			});
+			reporter.scheduleAtFixedRate(() -> System.out.println("Progress: " + metrics.getReport()), 
+					reportInterval, reportInterval, TimeUnit.SECONDS);
+		}
+		metrics.register();
+		
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		List<SearchTask> tasks = startTasks;
+		try {
+			if (meetInTheMiddle)
+				new MeetInTheMiddle(this, memoryBudget, spillDirectory).run(startNodes, pool);
+			else
+				pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+			
+			if (checkpointer != null) {
+				checkpointer.shutdown();
+				checkpointer.awaitTermination(1, TimeUnit.MINUTES);
+			}
+			
+			// Unless the time ran out, there's nothing left to resume
+			if (timedOut) {
+				if (checkpointFile != null) {
+					writeCheckpoint();
+					System.out.println("Time limit reached, the search can be resumed from " + checkpointFile);
+				} else {
+					System.out.println("Time limit reached");
+				}
+			} else if (checkpointFile != null) {
+				Files.deleteIfExists(checkpointFile);
+			}
+		} catch (IOException | InterruptedException e) {
+			System.out.println(e);
+		} finally {
+			pool.shutdown();
+			if(checkpointer != null)
+				checkpointer.shutdownNow();
+			if(reporter != null)
+				reporter.shutdownNow();
+			metrics.unregister();
+		}
+		
+		System.out.println(getCycleCount() + " cycles found. " + getPruningStatistics());
+		return foundArcCycles;
+	}
+	
+	// Distinct cycles found, the ones beyond the limit not counted
+	int getCycleCount() {
+		int count = foundCyclesCounter.get();
+		return cycleLimit > 0? Math.min(count, cycleLimit): count;
+	}
+	
+	void cancel(boolean timeLimitReached) {
+		if (timeLimitReached)
+			timedOut = true;
+		cancelled = true;
+	}
+	
+	void register(SearchTask task) {
+		// Checkpoints that already started have to wait for this task too
+		synchronized (activeTasks) {
+			activeTasks.add(task);
+		}
+	}
+	
+	Checkpoint newCheckpoint() {
+		return new Checkpoint(graph, r, nodeSymmetries == null? 1: nodeSymmetries.length, termination);
+	}
+	
+	// Collects the published state of all active tasks. A task forked while the checkpoint is taken 
+	// may have left its parent's state already, so this repeats until no task shows up anymore.
+	void writeCheckpoint() {
+		try {
+			Checkpoint checkpoint = newCheckpoint();
+			int epoch;
+			List<SearchTask> tasks;
+			synchronized (activeTasks) {
+				epoch = ++checkpointEpoch;
+				tasks = new ArrayList<>(activeTasks);
+			}
+			
+			Set<SearchTask> collected = new HashSet<>();
+			while (!tasks.isEmpty()) {
+				for (SearchTask task : tasks) {
+					Checkpoint.TaskState state = task.getState(epoch);
+					if (state != null)
+						checkpoint.tasks.add(state);
+					collected.add(task);
+				}
+				
+				tasks = new ArrayList<>(activeTasks);
+				tasks.removeAll(collected);
+			}
+			
+			// Cycles found after the tasks published their state will be found again, and recognized. 
+			// Counted cycles aren't kept, their keys are enough for that.
+			if (termination == Termination.COUNT) {
+				checkpoint.cycleKeys.addAll(foundCycleKeys);
+			} else {
+				synchronized (foundArcCycles) {
+					checkpoint.cycles.addAll(foundArcCycles);
+				}
+			}
+			checkpoint.write(checkpointFile);
+		} catch (IOException e) {
+			System.out.println("Couldn't write checkpoint: " + e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	// Restores the found cycles and recreates the tasks that weren't done 
+	private List<SearchTask> resumeTasks(Checkpoint checkpoint) {
+		for (int[] arcCycle : checkpoint.cycles) {
+			Object key = cycleKeys.apply(arcCycle);
+			if (foundCycleKeys.add(key)) {
+				foundCyclesCounter.incrementAndGet();
+				recordCycle(arcCycle, key);
+			}
+		}
+		for (Object key : checkpoint.cycleKeys) {
+			if (foundCycleKeys.add(key))
+				foundCyclesCounter.incrementAndGet();
+		}
+		if (cycleLimit > 0 && foundCyclesCounter.get() >= cycleLimit)
+			cancel(false);
+		
+		// Tasks of the same start node stop together
+		Map<Integer, AtomicBoolean> startNodeDone = new HashMap<>();
+		List<SearchTask> tasks = new ArrayList<>();
+		for (Checkpoint.TaskState state : checkpoint.tasks) {
+			AtomicBoolean done = startNodeDone.computeIfAbsent(state.startNode, node -> new AtomicBoolean());
+			SearchTask task = new SearchTask(this, state.startNode, done, Arrays.copyOf(state.path, state.rootDepth));
+			task.state = state;
+			tasks.add(task);
+		}
+		
+		System.out.println("Resumed " + tasks.size() + " tasks and " + foundCyclesCounter.get() + " cycles from " + checkpointFile);
+		return tasks;
+	}
+	
+	String getPruningStatistics() {
+		String statistics = String.format("Expanded %d nodes, pruned %d branches", metrics.getExpandedNodes(), metrics.getPrunedByLabelSupply());
+		if (transpositionTable != null)
+			statistics += ", " + metrics.getTranspositionReport();
+		return statistics;
+	}
+
+	// Adds the cycle given by its arc ids, unless the same cycle (starting elsewhere, running 
+	// in the other direction or mapped by a symmetry) had been found already. 
+	// Doesn't block other workers doing the same.
+	void addCycle(int[] arcCycle) {
+		Object key = cycleKeys.apply(arcCycle);
+		if (!foundCycleKeys.add(key))
+			return;
+		
+		// Workers that didn't see the cancellation yet may find cycles beyond the limit
+		int cycleNumber = foundCyclesCounter.incrementAndGet();
+		if (cycleLimit > 0 && cycleNumber >= cycleLimit) {
+			cancel(false);
+			if (cycleNumber > cycleLimit)
+				return;
+		}
+		metrics.cyclesFound.incrementAndGet();
+		
+		// Counted cycles are neither kept nor reported, only their keys
+		if (termination == Termination.COUNT)
+			return;
+		
+		int[] newCycle = recordCycle(arcCycle, key);
+		System.out.println("Cycle number " + cycleNumber + " found.");
+		
+		CycleFoundEvent event = new CycleFoundEvent();
+		if (event.shouldCommit()) {
+			event.cycleNumber = cycleNumber;
+			event.length = arcCycle.length;
+			event.commit();
+		}
+		
+		if(cycleListener != null)
+			cycleListener.cycleFound(cycleNumber, newCycle);
+	}
+	
+	private CycleKey getCycleKey(int[] arcCycle) {
+		int[] nodeCycle = new int[arcCycle.length];
+		for (int i = 0; i < arcCycle.length; i++) {
+			nodeCycle[i] = graph.getArcTarget(arcCycle[i]);
+		}
+		return nodeSymmetries == null? new CycleKey(nodeCycle): CycleKey.getSmallest(nodeCycle, nodeSymmetries);
+	}
+	
+	// Lets the cycle begin with the arc leading to its smallest node, if the key tells which one that is
+	private static int[] rotate(int[] arcCycle, Object key) {
+		if (!(key instanceof CycleKey))
+			return arcCycle.clone();
+		
+		int first = ((CycleKey) key).first;
+		int[] rotatedCycle = new int[arcCycle.length];
+		for (int i = 0; i < arcCycle.length; i++) {
+			rotatedCycle[i] = arcCycle[(first + i) % arcCycle.length];
+		}
+		return rotatedCycle;
+	}
+	
+	// Saves a cycle not found before and returns it
+	private int[] recordCycle(int[] arcCycle, Object key) {
+		int[] rotatedCycle = rotate(arcCycle, key);
+		foundArcCycles.add(rotatedCycle);
+		return rotatedCycle;
+	}
+}
+
+// Identifies a cycle regardless of the node it starts with and the direction it is read in. 
+// The node ids of a simple cycle are distinct, so its minimal rotation over both directions 
+// starts with the smallest id and continues towards the smaller of its two neighbors. 
+// Checkpoints of counting searches hold the keys instead of the cycles, so they are serializable.
+class CycleKey implements Serializable {
+	int[] nodes;
+	int hash;
+	
+	// Position of the smallest node in the sequence the key was built from
+	int first;
+	
+	CycleKey(int[] cycle) {
+		int length = cycle.length;
+		for (int i = 1; i < length; i++) {
+			if (cycle[i] < cycle[first])
+				first = i;
+		}
+		
+		int step = cycle[(first + 1) % length] <= cycle[(first + length - 1) % length]? 1: length - 1;
+		nodes = new int[length];
+		for (int i = 0; i < length; i++) {
+			nodes[i] = cycle[(first + i * step) % length];
+		}
+		hash = Arrays.hashCode(nodes);
+	}
+
+	// The smallest key among the images of the cycle under the given node permutations
+	static CycleKey getSmallest(int[] cycle, int[][] symmetries) {
+		CycleKey smallest = new CycleKey(cycle);
+		int[] image = new int[cycle.length];
+		for (int g = 1; g < symmetries.length; g++) {
+			for (int i = 0; i < cycle.length; i++) {
+				image[i] = symmetries[g][cycle[i]];
+			}
+			CycleKey key = new CycleKey(image);
+			if (Arrays.compare(key.nodes, smallest.nodes) < 0)
+				smallest = key;
+		}
+		return smallest;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		CycleKey other = (CycleKey) obj;
+		return this == other || (hash == other.hash && Arrays.equals(nodes, other.nodes));
+	}
+}
+
+// Searches the subtree below a path (prefix) of arcs starting at startNode. 
+// Subtrees close to the root are forked as new tasks whenever the pool runs short of work, 
+// so idle workers can steal them.
+// 
+// A rainbow cycle takes every label exactly r times, and each of its arcs enters another node. 
+// So after each step, every label l still needing labelTargets[l] - timesFound[l] arcs (r - timesFound[l] 
+// unless the search looks for paths) must be able to enter that many unvisited nodes (labelSupply[l]), 
+// or the branch is cut. The start node counts as unvisited.
+// 
+// States whose subtree was searched completely by one task without finding a cycle go into the
+// transposition table, if there is one, and are skipped when reached again. Subtrees of fewer than
+// MIN_CACHED_ARCS arcs are searched again instead, they'd only crowd the table out.
+class SearchTask extends RecursiveAction {
+	static final int MAX_SURPLUS_TASKS = 2;
+	static final int MIN_CACHED_ARCS = 16;
+	
+	// Steps between two flushes of the counters to the search metrics, 
+	// which is also when the task looks whether a checkpoint waits for it
+	static final int POLL_MASK = (1 << 12) - 1;
+	
+	RainbowSearch search;
+	int startNode;
+	int[] prefix;
+	
+	// Each start node is done with once a cycle through it was found
+	AtomicBoolean startNodeDone;
+	
+	// The state last published for a checkpoint, or the one to resume from. Guarded by this.
+	// A task stopped by the time limit publishes where it stopped, for the last checkpoint.
+	Checkpoint.TaskState state;
+	volatile int publishedEpoch;
+	boolean started, loopDone, stoppedByTimeLimit;
+	
+	SearchTask(RainbowSearch search, int startNode, AtomicBoolean startNodeDone, int[] prefix) {
+		this.search = search;
+		this.startNode = startNode;
+		this.startNodeDone = startNodeDone;
+		this.prefix = prefix;
+	}
+
+	@Override
+	protected void compute() {
+		if(prefix.length == 0)
+			System.out.println("Started: start node " + startNode);
+		
+		Checkpoint.TaskState resumeState;
+		synchronized (this) {
+			started = true;
+			resumeState = state;
+		}
+		
+		// The search only sees node, arc and label ids, nothing of what they stand for is hashed
+		LabelledGraph graph = search.graph;
+		int[] nodeLabelOffsets = search.nodeLabelOffsets;
+		int[] nodeLabels = search.nodeLabels;
+		int cycleLength = search.cycleLength;
+		int[] labelTargets = search.labelTargets;
+		PathEnd pathEnd = search.pathEnd;
+		boolean pruning = search.feasibilityPruning;
+		TranspositionTable table = search.transpositionTable;
+		
+		// Counted since the last flush to the search metrics
+		long expandedNodes = 0, backtracks = 0, skippedVisited = 0, skippedFull = 0, prunedBranches = 0;
+		long[] expandedAtDepth = new long[cycleLength + 1];
+		long totalExpandedNodes = 0;
+		int maxDepth = 0;
+		SearchTaskEvent event = new SearchTaskEvent();
+		event.begin();
+		
+		// arcStack[i] is the arc taken at depth i, nextArc[i] the next arc to try at depth i. 
+		// The node the arc enters and its label are kept too, the graph may have to work them out.
+		int[] arcStack = new int[cycleLength];
+		int[] nodeStack = new int[cycleLength];
+		int[] labelStack = new int[cycleLength];
+		int[] nextArc = new int[cycleLength + 1];
+		int depth = 0;
+		int[] timesFound = new int[graph.getLabelCount()];
+		
+		// Bit v of visited is set while v is on the current path, so checking a target is O(1).
+		// One bit a node keeps every task small on graphs with millions of nodes.
+		long[] visited = new long[(graph.getNodeCount() + 63) >>> 6];
+		
+		// labelSupply[l]: unvisited nodes an arc labelled l can enter, only kept up for pruning
+		int[] labelSupply = pruning? search.labelNodeCounts.clone(): null;
+		
+		// hashes[i] identifies the state at depth i for the transposition table. 
+		// alive[i] is set once a cycle was found or a task forked below the state at depth i.
+		long[] hashes = new long[cycleLength + 1];
+		boolean[] alive = new boolean[cycleLength + 1];
+		if (table != null)
+			hashes[0] = table.getStartHash(startNode);
+
+		// Walk down the prefix to the root of this task's subtree
+		int currentNode = startNode;
+		for (int arc : prefix) {
+			int target = graph.getArcTarget(arc), label = graph.getArcLabel(arc);
+			if (table != null)
+				hashes[depth + 1] = table.step(hashes[depth], currentNode, target, label, timesFound[label]);
+			takeArc(target, label, timesFound, visited, labelSupply);
+			nodeStack[depth] = target;
+			labelStack[depth] = label;
+			arcStack[depth++] = arc;
+			currentNode = target;
+		}
+		int rootDepth = depth;
+		nextArc[depth] = graph.getFirstArc(currentNode);
+		
+		// Go on where the task stood when the checkpoint was written
+		if (resumeState != null && resumeState.nextArcs != null) {
+			nextArc[rootDepth] = resumeState.nextArcs[0];
+			for (int i = rootDepth; i < resumeState.path.length; i++) {
+				int arc = resumeState.path[i];
+				int target = graph.getArcTarget(arc), label = graph.getArcLabel(arc);
+				
+				// What was searched before the checkpoint is unknown
+				alive[depth] = true;
+				if (table != null)
+					hashes[depth + 1] = table.step(hashes[depth], currentNode, target, label, timesFound[label]);
+				takeArc(target, label, timesFound, visited, labelSupply);
+				nodeStack[depth] = target;
+				labelStack[depth] = label;
+				arcStack[depth++] = arc;
+				currentNode = target;
+				nextArc[depth] = resumeState.nextArcs[depth - rootDepth];
+			}
+		}
+		
+		List<SearchTask> forkedTasks = new ArrayList<>();
+		boolean perStartNode = search.termination == Termination.PER_START_NODE;
+		boolean subtreeDone = false;
+		int steps = 0;
+		while(!startNodeDone.get() && !search.cancelled) {
+			if ((++steps & POLL_MASK) == 0) {
+				if (search.timeLimited && System.nanoTime() - search.deadline > 0) {
+					search.cancel(true);
+					break;
+				}
+				
+				search.metrics.add(startNode, depth, expandedNodes, backtracks, skippedVisited, skippedFull, prunedBranches);
+				search.metrics.addDepths(expandedAtDepth);
+				search.metrics.reportMaxDepth(maxDepth);
+				totalExpandedNodes += expandedNodes;
+				expandedNodes = backtracks = skippedVisited = skippedFull = prunedBranches = 0;
+				
+				if (publishedEpoch != search.checkpointEpoch)
+					publishState(arcStack, nextArc, depth, rootDepth);
+			}
+			
+			if(nextArc[depth] < graph.getFirstArc(currentNode + 1)) {
+				int currentArc = nextArc[depth]++;
+				int target = graph.getArcTarget(currentArc);
+				
+				// if currentArc leads to a visited node that's not the first node in the cycle, move to a next arc.
+				if(target != startNode && (visited[target >>> 6] & (1L << target)) != 0) {
+					skippedVisited++;
+					continue;
+				}
+				
+				int label = graph.getArcLabel(currentArc);
+				if(timesFound[label] >= labelTargets[label]) {
+					skippedFull++;
+				} else {
+					
+					// if we came back to first node in the cycle, and the cycle is complete, we have found a rainbow cycle. 
+					// A complete path ends where pathEnd says, anywhere but at the start node.
+					if(depth + 1 == cycleLength) {
+						arcStack[depth] = currentArc;
+						if(pathEnd == null? target == startNode: target != startNode && pathEnd.endsWith(arcStack, target)) {
+							search.addCycle(arcStack);
+							Arrays.fill(alive, 0, depth + 1, true);
+							if (perStartNode) {
+								startNodeDone.set(true);
+								break;
+							}
+						}
+						
+						// Keep searching for other rainbow cycles
+						
+					} else if(target != startNode) {
+						if(depth < search.splitDepth && getSurplusQueuedTaskCount() < MAX_SURPLUS_TASKS) {
+							int[] childPrefix = Arrays.copyOf(arcStack, depth + 1);
+							childPrefix[depth] = currentArc;
+							SearchTask child = new SearchTask(search, startNode, startNodeDone, childPrefix);
+							search.register(child);
+							child.fork();
+							forkedTasks.add(child);
+							Arrays.fill(alive, 0, depth + 1, true);
+							continue;
+						}
+						
+						expandedNodes++;
+						expandedAtDepth[depth + 1]++;
+						if (table != null)
+							hashes[depth + 1] = table.step(hashes[depth], currentNode, target, label, timesFound[label]);
+						takeArc(target, label, timesFound, visited, labelSupply);
+						nodeStack[depth] = target;
+						labelStack[depth] = label;
+						arcStack[depth++] = currentArc;
+						
+						// Only the supply of the labels that can enter target went down
+						if (pruning) {
+							boolean feasible = true;
+							for (int i = nodeLabelOffsets[target]; i < nodeLabelOffsets[target + 1]; i++) {
+								int enteringLabel = nodeLabels[i];
+								if (labelSupply[enteringLabel] < labelTargets[enteringLabel] - timesFound[enteringLabel]) {
+									feasible = false;
+									break;
+								}
+							}
+							
+							if (!feasible) {
+								prunedBranches++;
+								depth--;
+								untakeArc(nodeStack[depth], labelStack[depth], timesFound, visited, labelSupply);
+								continue;
+							}
+						}
+						
+						if (table != null && cycleLength - depth >= MIN_CACHED_ARCS && table.contains(hashes[depth])) {
+							depth--;
+							untakeArc(nodeStack[depth], labelStack[depth], timesFound, visited, labelSupply);
+							continue;
+						}
+						alive[depth] = false;
+						
+						// The new current node starts over with its first outgoing arc. 
+						// What's done upon exploring cycle A shouldn't affect exploration of cycle B. 
+						if (depth > maxDepth)
+							maxDepth = depth;
+						currentNode = target;
+						nextArc[depth] = graph.getFirstArc(currentNode);
+					}
+				}
+			} else {
+				// All arcs of the subtree root were used. Nothing to be done anymore in this task. 
+				if(depth == rootDepth) {
+					subtreeDone = true;
+					break;
+				}
+				
+				// No? Then go back one step.
+				backtracks++;
+				if (table != null && !alive[depth] && cycleLength - depth >= MIN_CACHED_ARCS)
+					table.add(hashes[depth]);
+				depth--;
+				untakeArc(nodeStack[depth], labelStack[depth], timesFound, visited, labelSupply);
+				currentNode = depth == 0? startNode: nodeStack[depth - 1];
+			}	
+		}
+		
+		// Stays active for the checkpoint written once all tasks stopped
+		boolean stopped = !subtreeDone && search.timedOut && !startNodeDone.get();
+		if (stopped)
+			publishState(arcStack, nextArc, depth, rootDepth);
+		
+		synchronized (this) {
+			loopDone = true;
+			stoppedByTimeLimit = stopped;
+		}
+		if (!stopped)
+			search.activeTasks.remove(this);
+		search.metrics.add(startNode, depth, expandedNodes, backtracks, skippedVisited, skippedFull, prunedBranches);
+		search.metrics.addDepths(expandedAtDepth);
+		search.metrics.reportMaxDepth(maxDepth);
+		
+		event.end();
+		if (event.shouldCommit()) {
+			event.startNode = startNode;
+			event.prefixLength = prefix.length;
+			event.expandedNodes = totalExpandedNodes + expandedNodes;
+			event.commit();
+		}
+		
+		for (SearchTask forkedTask : forkedTasks) {
+			forkedTask.join();
+		}
+		
+		if(prefix.length == 0)
+			System.out.println("Finished: start node " + startNode);
+	}
+
+	private synchronized void publishState(int[] arcStack, int[] nextArc, int depth, int rootDepth) {
+		Checkpoint.TaskState current = new Checkpoint.TaskState();
+		current.startNode = startNode;
+		current.rootDepth = rootDepth;
+		current.path = Arrays.copyOf(arcStack, depth);
+		current.nextArcs = Arrays.copyOfRange(nextArc, rootDepth, depth + 1);
+		state = current;
+		publishedEpoch = search.checkpointEpoch;
+	}
+	
+	// The state of this task for the given checkpoint, or null if there's nothing left to do. 
+	// Waits for a running task to publish it.
+	Checkpoint.TaskState getState(int epoch) throws InterruptedException {
+		while (true) {
+			synchronized (this) {
+				if (startNodeDone.get())
+					return null;
+				if (loopDone)
+					return stoppedByTimeLimit? state: null;
+				
+				if (!started) {
+					if (state != null)
+						return state;
+					
+					Checkpoint.TaskState root = new Checkpoint.TaskState();
+					root.startNode = startNode;
+					root.rootDepth = prefix.length;
+					root.path = prefix;
+					return root;
+				}
+				
+				if (publishedEpoch >= epoch)
+					return state;
+			}
+			Thread.sleep(1);
+		}
+	}
+
+	// Counts the label of an arc entering target, marks target visited and takes it from the label supply
+	private void takeArc(int target, int label, int[] timesFound, long[] visited, int[] labelSupply) {
+		timesFound[label]++;
+		visited[target >>> 6] |= 1L << target;
+		if (labelSupply == null)
+			return;
+		for (int i = search.nodeLabelOffsets[target]; i < search.nodeLabelOffsets[target + 1]; i++) {
+			labelSupply[search.nodeLabels[i]]--;
+		}
+	}
+	
+	private void untakeArc(int target, int label, int[] timesFound, long[] visited, int[] labelSupply) {
+		timesFound[label]--;
+		visited[target >>> 6] &= ~(1L << target);
+		if (labelSupply == null)
+			return;
+		for (int i = search.nodeLabelOffsets[target]; i < search.nodeLabelOffsets[target + 1]; i++) {
+			labelSupply[search.nodeLabels[i]]++;
+		}
+	}
+}
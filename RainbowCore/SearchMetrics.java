@@ -0,0 +1,304 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.Collectors;
+import javax.management.*;
+import jdk.jfr.*;
+
+// Counters of one rainbow cycle search. Tasks count in local variables and add them up here every 
+// few thousand steps, so the counters neither need locks nor slow the search down. 
+// They are registered as an MBean while the search runs and recorded by JFR when it's enabled.
+class SearchMetrics implements SearchMetricsMBean {
+	static final String OBJECT_NAME = "rainbowcycles:type=SearchMetrics";
+	
+	LongAdder expandedNodes = new LongAdder();
+	LongAdder backtracks = new LongAdder();
+	
+	// Arcs not followed, by reason
+	LongAdder skippedVisitedTargets = new LongAdder();
+	LongAdder skippedFullLabels = new LongAdder();
+	LongAdder prunedByLabelSupply = new LongAdder();
+	
+	LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+	AtomicInteger cyclesFound = new AtomicInteger();
+	
+	// Last depth reported by and nodes expanded by each worker of the pool, by pool index
+	AtomicIntegerArray currentDepths;
+	AtomicLongArray expandedByWorker;
+	
+	// Nodes expanded at each depth, that is with as many arcs on the path
+	AtomicLongArray expandedByDepth;
+	
+	// Nodes expanded below each start node
+	Map<Integer, LongAdder> expandedByStartNode = new ConcurrentHashMap<>();
+	
+	// Counts its own lookups and hits, if the search has one
+	TranspositionTable transpositionTable;
+	
+	long startNanos = System.nanoTime();
+	
+	// Where the previous periodic report stood
+	private long lastExpanded, lastNanos = startNanos;
+	private long[] lastExpandedByWorker;
+	
+	SearchMetrics(int parallelism, int cycleLength) {
+		currentDepths = new AtomicIntegerArray(parallelism);
+		expandedByWorker = new AtomicLongArray(parallelism);
+		lastExpandedByWorker = new long[parallelism];
+		expandedByDepth = new AtomicLongArray(cycleLength + 1);
+	}
+	
+	// Called by the tasks with what they counted since they last did
+	void add(int startNode, int depth, long expanded, long backtracked, long skippedVisited, long skippedFull, long prunedSupply) {
+		expandedNodes.add(expanded);
+		backtracks.add(backtracked);
+		skippedVisitedTargets.add(skippedVisited);
+		skippedFullLabels.add(skippedFull);
+		prunedByLabelSupply.add(prunedSupply);
+		expandedByStartNode.computeIfAbsent(startNode, node -> new LongAdder()).add(expanded);
+		
+		Thread thread = Thread.currentThread();
+		if (thread instanceof ForkJoinWorkerThread) {
+			int worker = ((ForkJoinWorkerThread) thread).getPoolIndex();
+			if (worker < currentDepths.length()) {
+				currentDepths.lazySet(worker, depth);
+				expandedByWorker.addAndGet(worker, expanded);
+			}
+		}
+	}
+	
+	// Called by the tasks with the nodes they expanded at each depth since they last did, which start over at 0
+	void addDepths(long[] expandedAtDepth) {
+		for (int depth = 0; depth < expandedAtDepth.length; depth++) {
+			if (expandedAtDepth[depth] != 0) {
+				expandedByDepth.addAndGet(depth, expandedAtDepth[depth]);
+				expandedAtDepth[depth] = 0;
+			}
+		}
+	}
+	
+	void reportMaxDepth(int depth) {
+		maxDepth.accumulate(depth);
+	}
+	
+	void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+			server.registerMBean(this, name);
+		} catch (JMException e) {
+			System.out.println("Couldn't register search metrics: " + e);
+		}
+		FlightRecorder.addPeriodicEvent(SearchProgressEvent.class, progressHook);
+	}
+	
+	void unregister() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+		} catch (JMException e) {
+			// Already gone
+		}
+		FlightRecorder.removePeriodicEvent(progressHook);
+	}
+	
+	private Runnable progressHook = () -> {
+		SearchProgressEvent event = new SearchProgressEvent();
+		event.expandedNodes = getExpandedNodes();
+		event.backtracks = getBacktracks();
+		event.prunedByLabelSupply = getPrunedByLabelSupply();
+		event.maxDepth = getMaxDepth();
+		event.cyclesFound = getCyclesFound();
+		event.expandedNodesByWorker = Arrays.toString(getExpandedNodesByWorker());
+		event.expandedNodesByDepth = Arrays.toString(getExpandedNodesByDepth());
+		event.commit();
+	};
+	
+	@Override
+	public long getExpandedNodes() {
+		return expandedNodes.sum();
+	}
+	
+	@Override
+	public double getExpandedNodesPerSecond() {
+		return getExpandedNodes() / ((System.nanoTime() - startNanos) / 1e9);
+	}
+	
+	@Override
+	public long[] getExpandedNodesByWorker() {
+		return toArray(expandedByWorker, expandedByWorker.length());
+	}
+	
+	@Override
+	public double[] getExpandedNodesPerSecondByWorker() {
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+		return Arrays.stream(getExpandedNodesByWorker()).mapToDouble(expanded -> expanded / seconds).toArray();
+	}
+	
+	// Up to the deepest node expanded
+	@Override
+	public long[] getExpandedNodesByDepth() {
+		return toArray(expandedByDepth, Math.min(getMaxDepth() + 1, expandedByDepth.length()));
+	}
+	
+	private static long[] toArray(AtomicLongArray counters, int length) {
+		long[] values = new long[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = counters.get(i);
+		}
+		return values;
+	}
+	
+	@Override
+	public long getBacktracks() {
+		return backtracks.sum();
+	}
+	
+	@Override
+	public long getSkippedVisitedTargets() {
+		return skippedVisitedTargets.sum();
+	}
+	
+	@Override
+	public long getSkippedFullLabels() {
+		return skippedFullLabels.sum();
+	}
+	
+	@Override
+	public long getPrunedByLabelSupply() {
+		return prunedByLabelSupply.sum();
+	}
+	
+	@Override
+	public int getMaxDepth() {
+		return (int) maxDepth.get();
+	}
+	
+	@Override
+	public int[] getCurrentDepths() {
+		int[] depths = new int[currentDepths.length()];
+		for (int i = 0; i < depths.length; i++) {
+			depths[i] = currentDepths.get(i);
+		}
+		return depths;
+	}
+	
+	@Override
+	public int getCyclesFound() {
+		return cyclesFound.get();
+	}
+	
+	@Override
+	public long getTranspositionLookups() {
+		return transpositionTable == null? 0: transpositionTable.lookups.sum();
+	}
+	
+	@Override
+	public long getTranspositionHits() {
+		return transpositionTable == null? 0: transpositionTable.hits.sum();
+	}
+	
+	@Override
+	public double getTranspositionHitRate() {
+		return transpositionTable == null? 0: transpositionTable.getHitRate();
+	}
+	
+	@Override
+	public long getTranspositionEvictions() {
+		return transpositionTable == null? 0: transpositionTable.evictions.sum();
+	}
+	
+	@Override
+	public String getHottestStartNodes() {
+		return expandedByStartNode.entrySet().stream()
+				.sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+				.limit(5)
+				.map(entry -> entry.getKey() + ": " + entry.getValue().sum())
+				.collect(Collectors.joining(", "));
+	}
+	
+	// One line for the periodic report, with the rates since the last one
+	String getReport() {
+		long expanded = getExpandedNodes();
+		long[] expandedByWorker = getExpandedNodesByWorker();
+		long now = System.nanoTime();
+		double seconds = (now - lastNanos) / 1e9;
+		double rate = (expanded - lastExpanded) / seconds;
+		long[] workerRates = new long[expandedByWorker.length];
+		for (int i = 0; i < workerRates.length; i++) {
+			workerRates[i] = Math.round((expandedByWorker[i] - lastExpandedByWorker[i]) / seconds);
+		}
+		lastExpanded = expanded;
+		lastExpandedByWorker = expandedByWorker;
+		lastNanos = now;
+		
+		String report = String.format("%.0f nodes/s (by worker %s), %d expanded (by depth %s), %d backtracks, "
+				+ "skipped %d visited and %d full labels, pruned %d by label supply, depth %s (max %d), %d cycles, "
+				+ "hottest start nodes %s", 
+				rate, Arrays.toString(workerRates), expanded, Arrays.toString(getExpandedNodesByDepth()), getBacktracks(), 
+				getSkippedVisitedTargets(), getSkippedFullLabels(), getPrunedByLabelSupply(), 
+				Arrays.toString(getCurrentDepths()), getMaxDepth(), getCyclesFound(), getHottestStartNodes());
+		if (transpositionTable != null)
+			report += String.format(", %s", getTranspositionReport());
+		return report;
+	}
+	
+	String getTranspositionReport() {
+		return String.format("transposition table hit %d of %d lookups (%.1f%%), %d evictions", getTranspositionHits(), 
+				getTranspositionLookups(), 100 * getTranspositionHitRate(), getTranspositionEvictions());
+	}
+}
+
+@Name("rainbowcycles.SearchTask")
+@Label("Rainbow Search Task")
+@Category("Rainbow Cycles")
+class SearchTaskEvent extends Event {
+	@Label("Start Node")
+	int startNode;
+	
+	@Label("Prefix Length")
+	int prefixLength;
+	
+	@Label("Expanded Nodes")
+	long expandedNodes;
+}
+
+@Name("rainbowcycles.CycleFound")
+@Label("Rainbow Cycle Found")
+@Category("Rainbow Cycles")
+class CycleFoundEvent extends Event {
+	@Label("Cycle Number")
+	int cycleNumber;
+	
+	@Label("Length")
+	int length;
+}
+
+@Name("rainbowcycles.SearchProgress")
+@Label("Rainbow Search Progress")
+@Category("Rainbow Cycles")
+@Period("1 s")
+class SearchProgressEvent extends Event {
+	@Label("Expanded Nodes")
+	long expandedNodes;
+	
+	@Label("Backtracks")
+	long backtracks;
+	
+	@Label("Pruned By Label Supply")
+	long prunedByLabelSupply;
+	
+	@Label("Max Depth")
+	int maxDepth;
+	
+	@Label("Cycles Found")
+	int cyclesFound;
+	
+	@Label("Expanded Nodes By Worker")
+	String expandedNodesByWorker;
+	
+	@Label("Expanded Nodes By Depth")
+	String expandedNodesByDepth;
+}
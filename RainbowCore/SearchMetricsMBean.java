@@ -0,0 +1,36 @@
+// Counters of a running rainbow cycle search, as seen over JMX
+public interface SearchMetricsMBean {
+	long getExpandedNodes();
+	
+	double getExpandedNodesPerSecond();
+	
+	long[] getExpandedNodesByWorker();
+	
+	double[] getExpandedNodesPerSecondByWorker();
+	
+	long[] getExpandedNodesByDepth();
+	
+	long getBacktracks();
+	
+	long getSkippedVisitedTargets();
+	
+	long getSkippedFullLabels();
+	
+	long getPrunedByLabelSupply();
+	
+	int getMaxDepth();
+	
+	int[] getCurrentDepths();
+	
+	int getCyclesFound();
+	
+	long getTranspositionLookups();
+	
+	long getTranspositionHits();
+	
+	double getTranspositionHitRate();
+	
+	long getTranspositionEvictions();
+	
+	String getHottestStartNodes();
+}
@@ -0,0 +1,27 @@
+// Settings of a rainbow cycle search, see RainbowSearch
+class SearchOptions {
+	// Cut branches that can't be completed to a rainbow cycle any more, see SearchTask
+	boolean feasibilityPruning = true;
+
+	// Where a search saves its progress every checkpointInterval seconds, and whether it continues from there
+	String checkpointFile;
+	int checkpointInterval = 60;
+	boolean resume;
+
+	// Seconds between two progress reports of a search, 0 for none
+	int reportInterval;
+
+	// Entries of the table of dead search states, 0 for none. Each takes 9 bytes.
+	int transpositionTableSize;
+
+	// Search by joining half-length paths. Their hash tables may take memoryBudget bytes in all,
+	// beyond that they are partitioned into files in spillDirectory.
+	boolean meetInTheMiddle;
+	long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+	String spillDirectory = System.getProperty("java.io.tmpdir");
+
+	// When a search stops: the number of cycles for Termination.LIMIT and the seconds it may take, 0 for no limit
+	Termination termination = Termination.PER_START_NODE;
+	int cycleLimit;
+	int timeLimit;
+}
@@ -0,0 +1,15 @@
+// When a rainbow cycle search stops. A time limit may end any of them earlier.
+enum Termination {
+	// Each start node is done with at its first cycle, the others go on
+	PER_START_NODE,
+
+	// Every cycle is searched for
+	ALL,
+
+	// All workers stop at the first cycle, or once cycleLimit cycles were found
+	FIRST,
+	LIMIT,
+
+	// Like ALL, but the cycles are only counted and neither kept nor written
+	COUNT
+}
@@ -0,0 +1,123 @@
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Remembers search states known to have no completion to a rainbow cycle, so a state reached again
+// by taking the same arcs in another order is skipped. What remains to be found from a state depends
+// only on its start node, current node, visited nodes and how often each label was taken,
+// so a state is identified by the Zobrist hash of these: the XOR of a random key per start node,
+// per current node, per visited node and per (label, count). A step changes only a few of them.
+//
+// The table is split into sets of WAYS slots. A set is found by the hash and guarded by one of
+// the lock stripes; when it's full, a clock hand passes over the slots, sparing the ones used since
+// it passed last, and replaces the first one not used.
+class TranspositionTable {
+	static final int WAYS = 8;
+	static final int STRIPES = 256;
+
+	// Zobrist keys
+	long[] startKeys;
+	long[] currentKeys;
+	long[] visitedKeys;
+	long[] countKeys;
+	int r;
+
+	// Slot i of set s is keys[s * WAYS + i], 0 when empty
+	long[] keys;
+	boolean[] referenced;
+	byte[] hands;
+	int setMask;
+	Object[] locks = new Object[STRIPES];
+
+	LongAdder lookups = new LongAdder();
+	LongAdder hits = new LongAdder();
+	LongAdder insertions = new LongAdder();
+	LongAdder evictions = new LongAdder();
+
+	// capacity is rounded down to a power of two, at least WAYS
+	TranspositionTable(int capacity, int nodeCount, int labelCount, int r) {
+		int sets = Integer.highestOneBit(Math.max(capacity / WAYS, 1));
+		setMask = sets - 1;
+		keys = new long[sets * WAYS];
+		referenced = new boolean[sets * WAYS];
+		hands = new byte[sets];
+		for (int i = 0; i < STRIPES; i++) {
+			locks[i] = new Object();
+		}
+
+		// Fixed seed, so runs are repeatable
+		this.r = r;
+		Random random = new Random(0x5eed);
+		startKeys = randomKeys(random, nodeCount);
+		currentKeys = randomKeys(random, nodeCount);
+		visitedKeys = randomKeys(random, nodeCount);
+		countKeys = randomKeys(random, labelCount * (r + 1));
+	}
+
+	private static long[] randomKeys(Random random, int count) {
+		long[] keys = new long[count];
+		for (int i = 0; i < count; i++) {
+			keys[i] = random.nextLong();
+		}
+		return keys;
+	}
+
+	// Hash of the state at the start node before the first step
+	long getStartHash(int startNode) {
+		return startKeys[startNode] ^ currentKeys[startNode];
+	}
+
+	// Hash after stepping from node to target by an arc labelled label, taken timesFound times before
+	long step(long hash, int node, int target, int label, int timesFound) {
+		int count = label * (r + 1) + timesFound;
+		return hash ^ currentKeys[node] ^ currentKeys[target] ^ visitedKeys[target] ^ countKeys[count] ^ countKeys[count + 1];
+	}
+
+	boolean contains(long hash) {
+		if (hash == 0)
+			hash = 1;
+		lookups.increment();
+		int set = (int) (hash ^ (hash >>> 32)) & setMask;
+		int first = set * WAYS;
+		synchronized (locks[set & (STRIPES - 1)]) {
+			for (int slot = first; slot < first + WAYS; slot++) {
+				if (keys[slot] == hash) {
+					referenced[slot] = true;
+					hits.increment();
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	void add(long hash) {
+		if (hash == 0)
+			hash = 1;
+		insertions.increment();
+		int set = (int) (hash ^ (hash >>> 32)) & setMask;
+		int first = set * WAYS;
+		synchronized (locks[set & (STRIPES - 1)]) {
+			for (int slot = first; slot < first + WAYS; slot++) {
+				if (keys[slot] == 0 || keys[slot] == hash) {
+					keys[slot] = hash;
+					return;
+				}
+			}
+
+			// Full: give the referenced slots a second chance
+			int hand = hands[set];
+			while (referenced[first + hand]) {
+				referenced[first + hand] = false;
+				hand = (hand + 1) % WAYS;
+			}
+			keys[first + hand] = hash;
+			hands[set] = (byte) ((hand + 1) % WAYS);
+			evictions.increment();
+		}
+	}
+
+	double getHitRate() {
+		long lookupCount = lookups.sum();
+		return lookupCount == 0? 0: (double) hits.sum() / lookupCount;
+	}
+}
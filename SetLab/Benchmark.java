@@ -0,0 +1,22 @@
+import java.util.*;
+
+// Times the hot paths of SetLab and compares them with stored baseline results, see BenchmarkHarness.
+// Usage: java [-Dwarmup=3] [-Druns=5] [-Dbaseline=benchmark-baseline.txt] [-Dsave=file] Benchmark
+public class Benchmark {
+	public static void main(String[] args) throws Exception {
+		BenchmarkHarness harness = new BenchmarkHarness(3, 5);
+
+		FlipGraph f = new FlipGraph(9, 4);
+		List<Set<Integer>> nodes = f.generateCombinations(9, 4);
+
+		harness.measure("generateArcs n=9 k=4", () -> f.generateArcs(nodes, 9).size());
+		harness.measure("FlipGraph n=9 k=4", () -> new FlipGraph(9, 4).arcs.size());
+		harness.measure("findRainbowCycle n=5 k=2 r=1", () -> new FlipGraph(5, 2).findRainbowCycle(1, 1).size());
+		harness.measure("findRainbowCycle JohnsonGraph n=5 k=2 r=1", () -> new JohnsonGraph(5, 2).findRainbowCycle(1, 1).size());
+		harness.measure("findRainbowBlock n=7 k=2 r=1", () -> f.findRainbowBlock(7, 2, 1).size());
+		harness.measure("findRainbowBlock n=9 k=3 r=1", () -> f.findRainbowBlock(9, 3, 1).size());
+		harness.measure("findRainbowBlock n=11 k=5 r=1", () -> f.findRainbowBlock(11, 5, 1).size());
+
+		harness.compareWithBaseline();
+	}
+}
@@ -1,125 +1,268 @@
+import java.io.Serializable;
+import java.nio.IntBuffer;
 import java.util.*;
-import java.util.stream.Collectors;
 
-class WorkerThread extends Thread {
-	FlipGraph flipGraph;
-	Set<Integer> startNode;
-	List<List<Arc>> foundCycles;
-	int r;
-	static int runningThreadsCounter = 0;
-	
-	WorkerThread(FlipGraph flipGraph, Set<Integer> startPoint, int r, List<List<Arc>> foundCycles) {
-		this.startNode = startPoint;
-		this.flipGraph = flipGraph;
-		this.r = r;
-		this.foundCycles = foundCycles;
-	}
+// Identifies a cycle of k-subsets regardless of the node it starts with, the direction it is read in 
+// and any renaming of the elements 1..n. For each rotation and direction, the elements are renamed 
+// by the order of their first appearances (elements appearing at the same positions can be exchanged 
+// without changing the cycle). The smallest of the renamed sequences of masks is the key.
+// 
+// Where an element appears is its signature: bit i of the signature (counted from the highest bit of 
+// the first word) is set iff the i-th set contains it. An element appearing first has the larger signature, 
+// read as unsigned words. The signatures are built once per direction over the sequence read twice, so 
+// each start reads its own from them. The sets of a start are renamed one by one, and the start is given 
+// up at the first set larger than the one of the smallest sequence so far.
+class SubsetCycleKey implements Serializable {
+	long[] masks;
+	int hash;
 	
-	@Override
-	public void run() {
-		System.out.println("Started:" +  ++WorkerThread.runningThreadsCounter);
+	SubsetCycleKey(long[] cycle, int n) {
+		int length = cycle.length;
+		int words = (length + 63) >>> 6;
+		long[] sequence = cycle.clone();
+		long[][] signatures = new long[n + 1][((2 * length) >>> 6) + 2];
+		long[] renamed = new long[length];
+		int[] elements = new int[n];
+		int[] newName = new int[n + 1];
 		
-		Stack<Arc> arcStack = new Stack<>();
-		int[] timesFound = new int[flipGraph.edges.size()];
-
-		Map<Set<Integer>, List<Arc>> remainingArcs = new HashMap<>();
-		for (Set<Integer> g : flipGraph.nodes) {
-			remainingArcs.put(g, new ArrayList<>(flipGraph.nodeToOutgoingArcs.get(g)));
-		}
-
-		Set<Integer> currentNode = startNode;
-		List<Arc> currentRemainingArcs = remainingArcs.get(currentNode);
-		while(true) {
-			if(!currentRemainingArcs.isEmpty()) {
-				Arc currentArc = currentRemainingArcs.remove(0);
-				
-				// if currentArc leads to a visited node that's not the first node in the cycle, move to a next arc.
-				if(currentArc.endNode != startNode) {
-					boolean nodeAlreadyVisited = false;
-					for(Arc arc: arcStack) {
-						if(arc.endNode == currentArc.endNode) {
-							nodeAlreadyVisited = true;
-							break;
-						}
+		for (int direction = 0; direction < 2; direction++) {
+			if (direction == 1) {
+				for (int i = 0; i < length; i++) {
+					sequence[i] = cycle[length - 1 - i];
+				}
+				for (long[] signature : signatures) {
+					Arrays.fill(signature, 0);
+				}
+			}
+			for (int i = 0; i < 2 * length; i++) {
+				for (long bits = sequence[i % length]; bits != 0; bits &= bits - 1) {
+					signatures[Long.numberOfTrailingZeros(bits)][i >>> 6] |= Long.MIN_VALUE >>> (i & 63);
+				}
+			}
+			
+			for (int start = 0; start < length; start++) {
+				// Sorts the elements by their signatures from start, the larger first. 
+				// Elements of equal signatures keep their order, either one would do.
+				for (int j = 0; j < n; j++) {
+					int x = j + 1, i = j;
+					while (i > 0 && compareSignatures(signatures[elements[i - 1]], signatures[x], start, words) < 0) {
+						elements[i] = elements[i - 1];
+						i--;
 					}
-					if(nodeAlreadyVisited) continue;
+					elements[i] = x;
+				}
+				for (int i = 0; i < n; i++) {
+					newName[elements[i]] = i + 1;
 				}
 				
-				int appearingDiagonalIdx = flipGraph.edges.indexOf(currentArc.edge);
-				if(timesFound[appearingDiagonalIdx] < r) {
-					
-					timesFound[appearingDiagonalIdx]++;
-					arcStack.push(currentArc);
-					
-					// if we came back to first node in the cycle, and the cycle is complete, we have found a rainbow cycle
-					if(currentArc.endNode == startNode) {
-						if(arcStack.size() == flipGraph.edges.size()*r) {
-							synchronized (flipGraph) {
-								List<Arc> foundCycle = new ArrayList<>(arcStack);
-								List<Set<Integer>> toPrint = new ArrayList<>();
-								for(Arc a: foundCycle) {
-									toPrint.add(a.startNode);
-								}
-								System.out.println(toPrint);
-								foundCycles.add(foundCycle);
-							}
-						}
-						
-						// Go back one step, and keep searching for other rainbow cycles
-						timesFound[appearingDiagonalIdx]--;
-						arcStack.pop();
-						
-					} else {
-						// newCurrentNode get a fresh batch of arcs. 
-						// This allows it to be used in exploring different cycles. 
-						// What's done upon exploring cycle A shouldn't affect exploration of cycle B. 
-						currentNode = currentArc.endNode;
-						remainingArcs.get(currentNode).clear();
-						remainingArcs.get(currentNode).addAll(flipGraph.nodeToOutgoingArcs.get(currentNode));
-						currentRemainingArcs = remainingArcs.get(currentNode);
+				boolean smaller = masks == null;
+				for (int i = 0; i < length; i++) {
+					long mask = 0;
+					for (long bits = sequence[(start + i) % length]; bits != 0; bits &= bits - 1) {
+						mask |= 1L << newName[Long.numberOfTrailingZeros(bits)];
 					}
+					if (!smaller) {
+						if (mask > masks[i])
+							break;
+						smaller = mask < masks[i];
+					}
+					renamed[i] = mask;
 				}
-			} else {
-				// All arcs of startNode were used (arcStack is empty in this case). Nothing to be done anymore. 
-				if(currentNode == startNode) {
-					System.out.println("Finished:" +  WorkerThread.runningThreadsCounter--);
-					return;
+				if (smaller) {
+					long[] previous = masks;
+					masks = renamed;
+					renamed = previous == null? new long[length]: previous;
 				}
-				
-				// No? Then go back one step.
-				int diagonalIdx = flipGraph.edges.indexOf(arcStack.pop().edge);
-				timesFound[diagonalIdx]--;
-				currentNode = arcStack.isEmpty()? startNode: arcStack.peek().endNode;
-				currentRemainingArcs = remainingArcs.get(currentNode);
-			}	
+			}
+		}
+		hash = Arrays.hashCode(masks);
+	}
+	
+	// Compares the signatures of the sequence read from start, as unsigned words. Past its end, 
+	// the sequence starts over, which doesn't change the order: signatures equal up to there stay equal.
+	private static int compareSignatures(long[] a, long[] b, int start, int words) {
+		int word = start >>> 6, offset = start & 63;
+		for (int j = 0; j < words; j++, word++) {
+			long x = a[word], y = b[word];
+			if (offset != 0) {
+				x = x << offset | a[word + 1] >>> (64 - offset);
+				y = y << offset | b[word + 1] >>> (64 - offset);
+			}
+			if (x != y)
+				return Long.compareUnsigned(x, y);
 		}
+		return 0;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		SubsetCycleKey other = (SubsetCycleKey) obj;
+		return this == other || (hash == other.hash && Arrays.equals(masks, other.masks));
 	}
 }
 
-class Arc{
+// Checks whether the n rotations of a block of k-subsets, one after the other, make an r-rainbow cycle. 
+// The sets are masks (bit x for element x), so rotating x to x+1 (and n to 1) is a shift. Each step must swap 
+// one pair, counted by its pairIndex, and no set may come twice, which a hash table of the masks tells. 
+// Apart from growing its arrays for longer blocks, a check allocates nothing, so each worker keeps its own verifier.
+class RainbowBlockVerifier {
+	int n, k, r;
+	long elementsMask;
+	int[] pairCounts;
 	
-	Set<Integer> startNode, endNode;
-	Set<Integer> edge = new HashSet<>();
+	// The block rotated as often as the sets being checked
+	long[] rotated = new long[0];
 	
-	public Arc(Set<Integer> startNode, Set<Integer> endNode) throws Exception {
-		this.startNode = startNode;
-		this.endNode = endNode;
+	// Open addressing by the mask, 0 for empty slots
+	long[] seen = new long[0];
+	
+	// The sets of the block checked last, when given by its arcs
+	long[] blockMasks = new long[0];
+	
+	RainbowBlockVerifier(int n, int k, int r) {
+		this.n = n;
+		this.k = k;
+		this.r = r;
+		this.elementsMask = ((1L << n) - 1) << 1;
+		this.pairCounts = new int[n * (n - 1) / 2];
+	}
+	
+	boolean isRainbowBlock(long[] block, int length) {
+		int cycleLength = n * length;
+		if (rotated.length < length)
+			rotated = new long[length];
+		if (seen.length < 2 * cycleLength)
+			seen = new long[Integer.highestOneBit(2 * cycleLength) << 1];
+		Arrays.fill(seen, 0);
+		Arrays.fill(pairCounts, 0);
 		
-		int appearing = 0, disappearing = 0;
-		for(int x: startNode) {
-			if(!endNode.contains(x)) disappearing = x;
+		// Check if size of a set is not correct
+		for (int i = 0; i < length; i++) {
+			if (Long.bitCount(block[i]) != k)
+				return false;
 		}
+		System.arraycopy(block, 0, rotated, 0, length);
 		
-		for(int x: endNode) {
-			if(!startNode.contains(x)) appearing = x;
+		long previous = 0;
+		for (int rotation = 0; rotation < n; rotation++) {
+			for (int i = 0; i < length; i++) {
+				long set = rotated[i];
+				if (!addSet(set))
+					return false;
+				if (previous != 0 && !countStep(previous, set))
+					return false;
+				previous = set;
+				rotated[i] = ((set << 1) & elementsMask) | ((set >>> (n - 1)) & 2);
+			}
 		}
+		if (!countStep(previous, block[0]))
+			return false;
 		
-		if(appearing != 0 && disappearing != 0) {
-			edge.add(appearing);
-			edge.add(disappearing);
-		} else {
-			throw new Exception();
+		// Check if each edge is used the correct number of times
+		for (int count : pairCounts) {
+			if (count != r)
+				return false;
+		}
+		return true;
+	}
+	
+	// The block of the sets the arcs of the flip graph leave
+	boolean isRainbowBlock(FlipGraph graph, int[] arcPath) {
+		if (blockMasks.length < arcPath.length)
+			blockMasks = new long[arcPath.length];
+		for (int i = 0; i < arcPath.length; i++) {
+			blockMasks[i] = graph.nodeMasks[graph.idToArc[arcPath[i]].startId];
 		}
+		return isRainbowBlock(blockMasks, arcPath.length);
+	}
+	
+		// False if the set was added before
+	private boolean addSet(long set) {
+		int mask = seen.length - 1;
+		int slot = (int) (set * 0x9e3779b97f4a7c15L >>> 32) & mask;
+		while (seen[slot] != 0) {
+			if (seen[slot] == set)
+				return false;
+			slot = (slot + 1) & mask;
+		}
+		seen[slot] = set;
+		return true;
+	}
+	
+	// False unless the sets differ by swapping one pair that wasn't used r times yet
+	private boolean countStep(long from, long to) {
+		long swapped = from ^ to;
+		if (Long.bitCount(swapped) != 2)
+			return false;
+		int a = Long.numberOfTrailingZeros(swapped), b = 63 - Long.numberOfLeadingZeros(swapped);
+		return ++pairCounts[FlipGraph.pairIndex(a, b, n)] <= r;
+	}
+}
+
+// The flip graph as the block search sees it: the same nodes and arcs, but labelled by the distance 
+// class of the swapped pair (the shorter way around the n-cycle between them, as index distance-1)
+class DistanceClassGraph implements LabelledGraph {
+	int nodeCount;
+	int[] arcOffsets;
+	int[] arcTargets;
+	int[] arcClasses;
+	int classCount;
+	
+	DistanceClassGraph(FlipGraph graph, int[] arcClasses, int classCount) {
+		this.nodeCount = graph.getNodeCount();
+		this.arcOffsets = graph.arcOffsets;
+		this.arcTargets = graph.arcTargets;
+		this.arcClasses = arcClasses;
+		this.classCount = classCount;
+	}
+	
+	@Override
+	public int getNodeCount() {
+		return nodeCount;
+	}
+	
+	@Override
+	public int getLabelCount() {
+		return classCount;
+	}
+	
+	@Override
+	public int getFirstArc(int node) {
+		return arcOffsets[node];
+	}
+	
+	@Override
+	public int getArcTarget(int arc) {
+		return arcTargets[arc];
+	}
+	
+	@Override
+	public int getArcLabel(int arc) {
+		return arcClasses[arc];
+	}
+}
+
+class Arc{
+	
+	Set<Integer> startNode, endNode;
+	Set<Integer> edge = new HashSet<>();
+	
+	// Ids of both nodes and index of the swapped pair {disappearing, appearing} in FlipGraph.edges
+	int startId, endId, label;
+	
+	public Arc(Set<Integer> startNode, Set<Integer> endNode, int startId, int endId, int disappearing, int appearing, int label) {
+		this.startNode = startNode;
+		this.endNode = endNode;
+		this.startId = startId;
+		this.endId = endId;
+		this.label = label;
+		edge.add(appearing);
+		edge.add(disappearing);
 	}
 
 	@Override
@@ -128,13 +271,33 @@ class Arc{
 	}
 }
 
-public class FlipGraph {
+public class FlipGraph implements LabelledGraph {
 	List<Set<Integer>> nodes;
 	List<Set<Integer>> edges;
 	List<Arc> arcs;
 	Map<Set<Integer>, Set<Arc>> nodeToOutgoingArcs = new HashMap<>();
+	long[] nodeMasks;
+	Map<Long, Integer> maskToId = new HashMap<>();
+	
+	// Compressed sparse row form used by the search: the outgoing arcs of node id v are
+	// arcOffsets[v]..arcOffsets[v+1]-1, leading to arcTargets[a] and swapping the pair arcLabels[a]
+	Arc[] idToArc;
+	int[] arcOffsets;
+	int[] arcTargets;
+	int[] arcLabels;
+	int n;
+	
+	// The k-subset graph is mapped onto itself by any permutation of 1..n. With symmetry reduction 
+	// the search starts at a single node and reports only one cycle out of each class of symmetric cycles.
+	boolean symmetryReduction = true;
+	
+	// Termination, time limit and the other settings of the rainbow cycle search, which looks for all cycles by default
+	SearchOptions options = new SearchOptions();
+	
+	// The most recent search, for its statistics
+	RainbowSearch lastSearch;
 
-	private List<Set<Integer>> generateCombinations(int n, int r) {
+	List<Set<Integer>> generateCombinations(int n, int r) {
 		List<Set<Integer>> combinations = new ArrayList<>();
 	    Integer[] combination = new Integer[r];
 
@@ -165,17 +328,45 @@ public class FlipGraph {
 	    return combinations;
 	}
 	
-	private List<Arc> generateArcs(List<Set<Integer>> nodes) throws Exception{
+	// Bit x of a mask is set iff x is a member of the set. Limits n to 63.
+	static long toMask(Set<Integer> set) {
+		long mask = 0;
+		for(int x: set) {
+			mask |= 1L << x;
+		}
+		return mask;
+	}
+	
+	// Index of the pair {a,b} in the lexicographically ordered list returned by generateCombinations(n, 2)
+	static int pairIndex(int a, int b, int n) {
+		if(a > b) {
+			int tmp = a;
+			a = b;
+			b = tmp;
+		}
+		return (a-1)*n - (a-1)*a/2 + (b-a-1);
+	}
+	
+	List<Arc> generateArcs(List<Set<Integer>> nodes, int n) {
+		long[] masks = new long[nodes.size()];
+		Map<Long, Integer> maskToIdx = new HashMap<>();
+		for (int i = 0; i < nodes.size(); i++) {
+			masks[i] = toMask(nodes.get(i));
+			maskToIdx.put(masks[i], i);
+		}
 		
+		// Neighbors differ in exactly one element: swap one member with one non-member.
+		// This is O(N*k*(n-k)) instead of comparing all pairs of nodes.
 		List<Arc> arcs = new ArrayList<>();
 		for (int i = 0; i < nodes.size(); i++) {
-			for (int j = 0; j < nodes.size(); j++) {
-				Set<Integer> result = nodes.get(i).stream()
-						  .distinct()
-						  .filter(nodes.get(j)::contains)
-						  .collect(Collectors.toSet());
-				if(result.size() == nodes.get(0).size()-1) {
-					arcs.add(new Arc(nodes.get(i), nodes.get(j)));
+			for (int out = 1; out <= n; out++) {
+				if((masks[i] & (1L << out)) == 0) continue;
+				
+				for (int in = 1; in <= n; in++) {
+					if((masks[i] & (1L << in)) != 0) continue;
+					
+					int j = maskToIdx.get(masks[i] ^ (1L << out) ^ (1L << in));
+					arcs.add(new Arc(nodes.get(i), nodes.get(j), i, j, out, in, pairIndex(out, in, n)));
 				}
 			}
 		}
@@ -184,10 +375,20 @@ public class FlipGraph {
 	}
 	
 	public FlipGraph(int n, int k) throws Exception {
+		if(n > 63)
+			throw new IllegalArgumentException("n must fit into a 64 bit mask");
+		
+		this.n = n;
 		nodes = generateCombinations(n, k);
-		arcs = generateArcs(nodes);
 		edges = generateCombinations(n, 2);
 		
+		nodeMasks = new long[nodes.size()];
+		for (int i = 0; i < nodes.size(); i++) {
+			nodeMasks[i] = toMask(nodes.get(i));
+			maskToId.put(nodeMasks[i], i);
+		}
+		arcs = generateArcs(nodes, n);
+		
 		for(Set<Integer> node: nodes) {
 			nodeToOutgoingArcs.put(node, new HashSet<>());
 		}
@@ -196,146 +397,160 @@ public class FlipGraph {
 			nodeToOutgoingArcs.get(arc.startNode).add(arc);
 		}
 		
+		idToArc = new Arc[arcs.size()];
+		arcOffsets = new int[nodes.size() + 1];
+		arcTargets = new int[arcs.size()];
+		arcLabels = new int[arcs.size()];
+		int arcId = 0;
+		for (int i = 0; i < nodes.size(); i++) {
+			arcOffsets[i] = arcId;
+			for (Arc arc : nodeToOutgoingArcs.get(nodes.get(i))) {
+				idToArc[arcId] = arc;
+				arcTargets[arcId] = arc.endId;
+				arcLabels[arcId] = arc.label;
+				arcId++;
+			}
+		}
+		arcOffsets[nodes.size()] = arcId;
+		
+		// Label supply hardly ever runs short in these graphs, checking it only slows each step down
+		options.termination = Termination.ALL;
+		options.feasibilityPruning = false;
+	}
+	
+	// The k-subset graph as the rainbow cycle search sees it, labelled by the swapped pair
+	@Override
+	public int getNodeCount() {
+		return nodes.size();
+	}
+	
+	@Override
+	public int getLabelCount() {
+		return edges.size();
+	}
+	
+	@Override
+	public int getFirstArc(int node) {
+		return arcOffsets[node];
+	}
+	
+	@Override
+	public int getArcTarget(int arc) {
+		return arcTargets[arc];
+	}
+	
+	@Override
+	public int getArcLabel(int arc) {
+		return arcLabels[arc];
 	}
 	
 	
 	public List<List<Arc>> findRainbowCycle(int r) {
-		List<List<Arc>> foundCycles = new ArrayList<List<Arc>>();
-		
-		List<Thread> workerThreadList = new ArrayList<>();
-		// Five different start nodes
-		for(int i=1; i<=5; i++) {
-			workerThreadList.add(new WorkerThread(this, nodes.get((nodes.size()/5)*i), r, foundCycles));
-		}
+		return findRainbowCycle(r, Runtime.getRuntime().availableProcessors());
+	}
+	
+	public List<List<Arc>> findRainbowCycle(int r, int parallelism) {
+		lastSearch = new RainbowSearch(this, r, options, null);
+		lastSearch.cycleListener = (cycleNumber, arcCycle) -> {
+			List<Set<Integer>> toPrint = new ArrayList<>();
+			for(int arc: arcCycle) {
+				toPrint.add(idToArc[arc].startNode);
+			}
+			System.out.println(toPrint);
+		};
 		
-		for(Thread workerThread: workerThreadList) {
-			workerThread.start();
+		int[] startNodes;
+		if(symmetryReduction) {
+			// All nodes lie in one orbit, so every cycle has a symmetric image through node 0
+			lastSearch.cycleKeys = this::getCycleKey;
+			startNodes = new int[] {0};
+		} else {
+			// Five different start nodes, fewer on graphs too small for them
+			startNodes = new int[5];
+			for(int i=1; i<=5; i++) {
+				startNodes[i - 1] = (nodes.size()/5)*i % nodes.size();
+			}
+			startNodes = Arrays.stream(startNodes).distinct().toArray();
 		}
 		
-		for(Thread workerThread: workerThreadList) {
-			try {
-				workerThread.join();
-			} catch (Exception e) {
-				e.printStackTrace();
+		List<List<Arc>> foundCycles = new ArrayList<List<Arc>>();
+		for (int[] arcCycle : lastSearch.run(startNodes, parallelism)) {
+			List<Arc> foundCycle = new ArrayList<>();
+			for(int arc: arcCycle) {
+				foundCycle.add(idToArc[arc]);
 			}
+			foundCycles.add(foundCycle);
 		}
-		
 		return foundCycles;
 	}
 	
-	// Adoboted from the findRainbowCycle method. Probably needs some cleaning.
-	public void findRainbowBlock(int n, int k, int r) throws Exception {
-		List<Set<Integer>> nodes = generateCombinations(n, k);
-		List<Arc> arcs = generateArcs(nodes);
-		Map<Set<Integer>, Set<Arc>> nodeToOutgoingArcs = new HashMap<>();
-		
-		for(Set<Integer> node: nodes) {
-			nodeToOutgoingArcs.put(node, new HashSet<>());
+	SubsetCycleKey getCycleKey(int[] arcCycle) {
+		long[] cycle = new long[arcCycle.length];
+		for (int i = 0; i < arcCycle.length; i++) {
+			cycle[i] = nodeMasks[arcTargets[arcCycle[i]]];
 		}
+		return new SubsetCycleKey(cycle, n);
+	}
+	
+	public List<List<Set<Integer>>> findRainbowBlock(int n, int k, int r) throws Exception {
+		return findRainbowBlock(n, k, r, Runtime.getRuntime().availableProcessors());
+	}
+	
+	// Searches the blocks from {1..k-1,n} whose n rotations make a rainbow cycle. A block takes each distance class 
+	// (see DistanceClassGraph) as often as classTargets says and ends where an arc enters a set containing 1..k. 
+	// The rainbow cycle search looks for these paths with the termination and other settings in options. 
+	// Each block found is printed.
+	public List<List<Set<Integer>>> findRainbowBlock(int n, int k, int r, int parallelism) throws Exception {
+		FlipGraph graph = n == this.n && k == nodes.get(0).size()? this: new FlipGraph(n, k);
 		
-		for(Arc arc: arcs) {
-			nodeToOutgoingArcs.get(arc.startNode).add(arc);
-		}
+		// Distance classes, by index distance-1. Takes into accound whether n is odd or even.
+		int[] classTargets = new int[n/2];
+		Arrays.fill(classTargets, r);
+		classTargets[n/2 - 1] = n%2==0 || r==1? 1: 2;
 		
-		Stack<Arc> arcStack = new Stack<>();
-		int[] distancesTimesFound = new int[n/2];
-
-		Map<Set<Integer>, List<Arc>> remainingArcs = new HashMap<>();
-		for (Set<Integer> g : nodes) {
-			remainingArcs.put(g, new ArrayList<>(nodeToOutgoingArcs.get(g)));
+		int[] pairClasses = new int[graph.edges.size()];
+		for (int a = 1; a < n; a++) {
+			for (int b = a+1; b <= n; b++) {
+				pairClasses[pairIndex(a, b, n)] = shorterDirection(a, b, n) - 1;
+			}
+		}
+		int[] arcClasses = new int[graph.arcLabels.length];
+		for (int arc = 0; arc < arcClasses.length; arc++) {
+			arcClasses[arc] = pairClasses[graph.arcLabels[arc]];
 		}
 		
-		// startNode is 1,2,..,k-1,n
-		Set<Integer> startNode = null;
-		for(Set<Integer> set: nodes) {
-			boolean thisIsIt = true;
-			if(!set.contains(n)) {
-				thisIsIt = false;
-				continue;
-			}
-			for (int i = 1; i < k; i++) {
-				if(!set.contains(i)) thisIsIt = false;
-			}
-			if(thisIsIt) startNode = set;
+		// Blocks start at 1,2,..,k-1,n and the next block starts at 1,2,..,k
+		long firstBlockStart = 1L << n;
+		for (int i = 1; i < k; i++) {
+			firstBlockStart |= 1L << i;
+		}
+		long nextBlockStart = (firstBlockStart & ~(1L << n)) | 1L << k;
+		boolean[] blockEnds = new boolean[graph.nodes.size()];
+		for (int v = 0; v < blockEnds.length; v++) {
+			blockEnds[v] = (graph.nodeMasks[v] & nextBlockStart) == nextBlockStart;
 		}
 		
-		Set<Integer> currentNode = startNode;
-		List<Arc> currentRemainingArcs = remainingArcs.get(currentNode);
-		while(true) {
-			if(!currentRemainingArcs.isEmpty()) {
-				Arc currentArc = currentRemainingArcs.remove(0);
-				
-				boolean nodeAlreadyVisited = false;
-				for(Arc arc: arcStack) {
-					if(arc.endNode == currentArc.endNode || currentArc.endNode == startNode) {
-						nodeAlreadyVisited = true;
-						break;
-					}
-				}
-				
-				if(nodeAlreadyVisited) continue;
-					
-				int[] edge = currentArc.edge.stream().mapToInt(Integer::intValue).toArray();
-				int distanceFound = shorterDirection(edge[0], edge[1], n);
-				if(distancesTimesFound[distanceFound-1] < r) {
-					
-					distancesTimesFound[distanceFound-1]++;
-					arcStack.push(currentArc);
-					
-					boolean allDistancesFound = true;
-					for (int i = 0; i < distancesTimesFound.length-1; i++) {
-						if(distancesTimesFound[i] != r) allDistancesFound = false;
-					}
-					
-					// Takes into accound whether n is odd or even. This probably need some cleaning.
-					if(distancesTimesFound[distancesTimesFound.length-1] != (n%2==0 || r==1? 1: 2))
-						allDistancesFound = false;
-					
-					if(allDistancesFound) {
-						boolean foundPotentialBlock = true;
-						
-						// Check whether first node in second block is 1,2,...,k
-						for (int i = 1; i <= k; i++) {
-							if(!currentArc.endNode.contains(i)) foundPotentialBlock = false;
-						}
-						
-						if(foundPotentialBlock) {
-							List<Arc> foundCycle = new ArrayList<>(arcStack);
-							
-							List<Set<Integer>> toPrint = new ArrayList<>();
-							for(Arc a: foundCycle) {
-								toPrint.add(a.startNode);
-							}
-							
-							if(isRainbowBlock(toPrint, n, k, r))
-								System.out.println(toPrint);
-						}
-						
-						// Go back one step, and keep searching for other rainbow cycles
-						distancesTimesFound[distanceFound-1]--;
-						arcStack.pop();
-						
-					} else {
-						currentNode = currentArc.endNode;
-						remainingArcs.get(currentNode).clear();
-						remainingArcs.get(currentNode).addAll(nodeToOutgoingArcs.get(currentNode));
-						currentRemainingArcs = remainingArcs.get(currentNode);
-					}
-				}
-			} else {
-				if(arcStack.isEmpty()) {
-					return;
-				}
-				
-				int[] edge = arcStack.pop().edge.stream()
-                        .mapToInt(Integer::intValue)
-                        .toArray();
-				int distanceFound = shorterDirection(edge[0], edge[1], n);
-				distancesTimesFound[distanceFound-1]--;
-				currentNode = arcStack.isEmpty()? startNode: arcStack.peek().endNode;
-				currentRemainingArcs = remainingArcs.get(currentNode);
-			}	
+		// Only blocks whose rotations make a rainbow cycle end there. No block is found twice, the arcs are its key.
+		ThreadLocal<RainbowBlockVerifier> verifiers = ThreadLocal.withInitial(() -> new RainbowBlockVerifier(n, k, r));
+		lastSearch = new RainbowSearch(new DistanceClassGraph(graph, arcClasses, classTargets.length), r, options, null);
+		lastSearch.searchPaths(classTargets, (arcPath, target) -> blockEnds[target] && verifiers.get().isRainbowBlock(graph, arcPath));
+		lastSearch.cycleKeys = arcPath -> IntBuffer.wrap(arcPath.clone());
+		lastSearch.cycleListener = (blockNumber, arcPath) -> System.out.println(graph.toBlock(arcPath));
+		
+		List<List<Set<Integer>>> foundBlocks = new ArrayList<>();
+		for (int[] arcPath : lastSearch.run(new int[] {graph.maskToId.get(firstBlockStart)}, parallelism)) {
+			foundBlocks.add(graph.toBlock(arcPath));
+		}
+		return foundBlocks;
+	}
+	
+	// The sets the arcs leave
+	List<Set<Integer>> toBlock(int[] arcPath) {
+		List<Set<Integer>> block = new ArrayList<>();
+		for (int arc : arcPath) {
+			block.add(idToArc[arc].startNode);
 		}
+		return block;
 	}
 	
 	
@@ -346,77 +561,11 @@ public class FlipGraph {
 	}
 	
 	public boolean isRainbowBlock(List<Set<Integer>> block, int n, int k, int r) {
-		// Create edges
-		List<String> edges = new ArrayList<>();
-		for (int i = 1; i < n; i++) {
-			for (int j = i+1; j <=n; j++) {
-				edges.add(""+i+","+j);
-			}
-		}
-		
-		
-		List<Set<Integer>> cycle = new ArrayList<>(block);
-		
-		for (int i=1; i<n; i++) {
-			for(Set<Integer> set: block) {
-				Set<Integer> newSet = new HashSet<>();
-				for(Integer num: set) {
-					Integer numPlus = (num+i) % n;
-					if(numPlus == 0) numPlus = n;
-					newSet.add(numPlus);
-				}
-				cycle.add(newSet);
-			}
+		long[] masks = new long[block.size()];
+		for (int i = 0; i < masks.length; i++) {
+			masks[i] = toMask(block.get(i));
 		}
-		
-		// Check if each edge is used the correct number of times
-		Map<String, Integer> appearanceNumbers = new HashMap<>();
-		for(String e: edges) {
-			appearanceNumbers.put(e, 0);
-		}
-		
-		for(int i=0; i< cycle.size(); i++) {
-			int j = i+1;
-			if(j == cycle.size()) j = 0;
-			
-			List<Integer> tmp1 = new ArrayList<>(cycle.get(i));
-			List<Integer> tmp2 = new ArrayList<>(cycle.get(j));
-			tmp1.removeAll(cycle.get(j));
-			tmp2.removeAll(cycle.get(i));
-			
-			String edgeUsed = tmp1.get(0)+","+tmp2.get(0);
-			String edgeUsedReversed = tmp2.get(0)+","+tmp1.get(0);
-			
-			
-			if(appearanceNumbers.containsKey(edgeUsed)) {
-				appearanceNumbers.put(edgeUsed, appearanceNumbers.get(edgeUsed)+1);	
-			} else {
-				appearanceNumbers.put(edgeUsedReversed, appearanceNumbers.get(edgeUsedReversed)+1);	
-			}
-			
-		}
-		
-		for(Integer appNum: appearanceNumbers.values()) {
-			if(appNum != r) return false;
-		}
-		
-		// Check if size of a set is not correct
-		for(Set<Integer> set: cycle) {
-			if(set.size() != k) 
-				return false;
-		}
-		
-		// Check if cycle contains duplicates
-		for (int i = 1; i < cycle.size(); i++) {
-			for (int j = i+1; j < cycle.size(); j++) {
-				if (cycle.get(i).equals(cycle.get(j))) {
-					return false;
-				}
-			}
-		}
-		
-		
-		return true;
+		return new RainbowBlockVerifier(n, k, r).isRainbowBlock(masks, masks.length);
 	}
 	
 }
@@ -0,0 +1,223 @@
+import java.util.*;
+
+// The k-subsets of 1..n joined by swapping one member for one non-member, like FlipGraph, but with
+// nothing stored. A set's id is its rank in colex order (the combinatorial number system: the i-th
+// smallest member x adds C(x-1, i)), and the arcs leaving it are numbered id * k(n-k) + index, where
+// index picks the member leaving (index / (n-k)) and the non-member entering (index % (n-k)), both
+// counted from the smallest. Targets and labels are worked out from the rank of the set leaving them
+// for the few sets the search is at, so it only needs its visited bits, C(n,k) of them, and graphs far
+// too large for FlipGraph fit.
+//
+// Arc ids are ints, so C(n,k) * k(n-k) must stay below 2^31 (n = 26, k = 13 is the largest balanced case).
+class JohnsonGraph implements LabelledGraph {
+	int n;
+	int k;
+	int nodeCount;
+	int degree;
+
+	// binomials[m][i] is C(m, i) for m <= n, i <= k + 1
+	long[][] binomials;
+
+	// See FlipGraph
+	boolean symmetryReduction = true;
+	SearchOptions options = new SearchOptions();
+	RainbowSearch lastSearch;
+
+	JohnsonGraph(int n, int k) {
+		if (k < 1 || k >= n || n > 63)
+			throw new IllegalArgumentException("Need 0 < k < n and n fitting into a 64 bit mask");
+
+		this.n = n;
+		this.k = k;
+		binomials = new long[n + 1][k + 2];
+		for (int m = 0; m <= n; m++) {
+			binomials[m][0] = 1;
+			for (int i = 1; i <= Math.min(m, k + 1); i++) {
+				binomials[m][i] = binomials[m - 1][i - 1] + binomials[m - 1][i];
+			}
+		}
+
+		long arcCount = binomials[n][k] * k * (n - k);
+		if (arcCount > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("C(" + n + "," + k + ") * " + k * (n - k) + " arcs don't fit into int ids");
+		this.nodeCount = (int) binomials[n][k];
+		this.degree = k * (n - k);
+
+		// As in FlipGraph
+		options.termination = Termination.ALL;
+		options.feasibilityPruning = false;
+	}
+
+	@Override
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	@Override
+	public int getLabelCount() {
+		return n * (n - 1) / 2;
+	}
+
+	@Override
+	public int getFirstArc(int node) {
+		return node * degree;
+	}
+
+	@Override
+	public int getArcTarget(int arc) {
+		int id = arc / degree;
+		return expand(id).targets[arc - id * degree];
+	}
+
+	@Override
+	public int getArcLabel(int arc) {
+		int id = arc / degree;
+		return expand(id).labels[arc - id * degree];
+	}
+
+	// The targets and labels of the arcs leaving a node, by index
+	static class ExpandedNode {
+		int id = -1;
+		int[] targets;
+		int[] labels;
+	}
+
+	// The search asks for all arcs of a node in a row and comes back to the nodes on its path, so
+	// each worker keeps its recently expanded nodes, one slot for the ids equal modulo CACHED_NODES
+	static final int CACHED_NODES = 64;
+	ThreadLocal<ExpandedNode[]> expandedNodes = ThreadLocal.withInitial(() -> {
+		ExpandedNode[] slots = new ExpandedNode[CACHED_NODES];
+		for (int i = 0; i < CACHED_NODES; i++) {
+			slots[i] = new ExpandedNode();
+			slots[i].targets = new int[degree];
+			slots[i].labels = new int[degree];
+		}
+		return slots;
+	});
+
+	ExpandedNode expand(int id) {
+		ExpandedNode node = expandedNodes.get()[id & (CACHED_NODES - 1)];
+		if (node.id != id) {
+			expand(id, node);
+		}
+		return node;
+	}
+
+	// Swapping the p-th member x (from 1) for the non-member y takes C(x-1, p) out of the rank. The members
+	// between them move one position down (y > x) or up and y comes after the q members smaller than it.
+	// down[i] and up[i] are what moving the first i members down or up adds to the rank.
+	private void expand(int id, ExpandedNode node) {
+		long mask = unrank(id);
+		int[] members = new int[k + 1];
+		int[] nonMembers = new int[n - k];
+		int[] membersBelow = new int[n + 1];
+		long[] down = new long[k + 1];
+		long[] up = new long[k + 1];
+		for (int x = 1, i = 0, j = 0; x <= n; x++) {
+			membersBelow[x] = i;
+			if ((mask & (1L << x)) != 0) {
+				members[++i] = x;
+				down[i] = down[i - 1] + binomials[x - 1][i - 1] - binomials[x - 1][i];
+				up[i] = up[i - 1] + binomials[x - 1][i + 1] - binomials[x - 1][i];
+			} else {
+				nonMembers[j++] = x;
+			}
+		}
+
+		int index = 0;
+		for (int p = 1; p <= k; p++) {
+			int x = members[p];
+			for (int y : nonMembers) {
+				int q = membersBelow[y];
+				long rank = id - binomials[x - 1][p];
+				if (y > x)
+					rank += down[q] - down[p] + binomials[y - 1][q];
+				else
+					rank += up[p - 1] - up[q] + binomials[y - 1][q + 1];
+				node.targets[index] = (int) rank;
+				node.labels[index] = FlipGraph.pairIndex(x, y, n);
+				index++;
+			}
+		}
+		node.id = id;
+	}
+
+	int rank(long mask) {
+		long rank = 0;
+		int i = 1;
+		for (long bits = mask; bits != 0; bits &= bits - 1) {
+			rank += binomials[Long.numberOfTrailingZeros(bits) - 1][i++];
+		}
+		return (int) rank;
+	}
+
+	// The largest member x is the one with C(x-1, k) <= rank < C(x, k), the rest is the rank of
+	// the smaller members as a (k-1)-subset. Members only get smaller, so each m is tried once.
+	long unrank(int rank) {
+		long mask = 0;
+		int m = n - 1;
+		for (int i = k; i > 0; i--) {
+			while (binomials[m][i] > rank) {
+				m--;
+			}
+			mask |= 1L << (m + 1);
+			rank -= binomials[m][i];
+			m--;
+		}
+		return mask;
+	}
+
+	static Set<Integer> toSet(long mask) {
+		Set<Integer> set = new HashSet<>();
+		for (long bits = mask; bits != 0; bits &= bits - 1) {
+			set.add(Long.numberOfTrailingZeros(bits));
+		}
+		return set;
+	}
+
+	public List<List<Set<Integer>>> findRainbowCycle(int r) {
+		return findRainbowCycle(r, Runtime.getRuntime().availableProcessors());
+	}
+
+	// Searches like FlipGraph.findRainbowCycle and returns the sets of each cycle, the start node first.
+	// Rank 0 is {1..k}, node 0 of FlipGraph too.
+	public List<List<Set<Integer>>> findRainbowCycle(int r, int parallelism) {
+		lastSearch = new RainbowSearch(this, r, options, null);
+		lastSearch.cycleListener = (cycleNumber, arcCycle) -> System.out.println(toSets(arcCycle));
+
+		int[] startNodes;
+		if (symmetryReduction) {
+			lastSearch.cycleKeys = this::getCycleKey;
+			startNodes = new int[] {0};
+		} else {
+			startNodes = new int[5];
+			for (int i = 1; i <= 5; i++) {
+				startNodes[i - 1] = (nodeCount / 5) * i % nodeCount;
+			}
+			startNodes = Arrays.stream(startNodes).distinct().toArray();
+		}
+
+		List<List<Set<Integer>>> foundCycles = new ArrayList<>();
+		for (int[] arcCycle : lastSearch.run(startNodes, parallelism)) {
+			foundCycles.add(toSets(arcCycle));
+		}
+		return foundCycles;
+	}
+
+	// The nodes the arcs leave, in order
+	List<Set<Integer>> toSets(int[] arcCycle) {
+		List<Set<Integer>> sets = new ArrayList<>();
+		for (int arc : arcCycle) {
+			sets.add(toSet(unrank(arc / degree)));
+		}
+		return sets;
+	}
+
+	SubsetCycleKey getCycleKey(int[] arcCycle) {
+		long[] cycle = new long[arcCycle.length];
+		for (int i = 0; i < arcCycle.length; i++) {
+			cycle[i] = unrank(arcCycle[i] / degree);
+		}
+		return new SubsetCycleKey(cycle, n);
+	}
+}
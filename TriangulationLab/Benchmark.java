@@ -0,0 +1,103 @@
+import java.io.*;
+import java.util.*;
+
+// Times the hot paths of TriangulationLab and compares them with stored baseline results, see BenchmarkHarness.
+// Usage: java [-Dwarmup=3] [-Druns=5] [-Dbaseline=benchmark-baseline.txt] [-Dsave=file] Benchmark
+//
+// Or times the rainbow cycle search on one input for the given values of r:
+// java [-Dwarmup=1] [-Druns=3] [-Dpruning=false] [-Dsymmetry=false] [-Dtermination=all] [-DcycleLimit=n] [-DtimeLimit=s]
+//     [-DmeetInTheMiddle=true] [-DmemoryBudget=MB] [-DtranspositionTable=entries] Benchmark [inputFile|ngon] [r1] [r2] ...
+public class Benchmark {
+	static final boolean PRUNING = Boolean.parseBoolean(System.getProperty("pruning", "true"));
+	static final boolean SYMMETRY = Boolean.parseBoolean(System.getProperty("symmetry", "true"));
+	static final long SEED = 42;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0) {
+			timeSearch(args, new BenchmarkHarness(1, 3));
+			return;
+		}
+		BenchmarkHarness harness = new BenchmarkHarness(3, 5);
+
+		List<Graph> graphs7 = main.readGraphs("7gon.txt");
+		List<Graph> graphs8 = main.readGraphs("8gon.txt");
+
+		harness.measure("addGraphs 7gon.txt", () -> newFlipGraph(graphs7).arcs.size());
+		harness.measure("addGraphs 8gon.txt", () -> newFlipGraph(graphs8).arcs.size());
+		harness.measure("generate 11gon", () -> new FlipGraphGenerator(PointSet.intern(FlipGraphGenerator.regularPolygon(11))).generateGraphs().size());
+
+		// Segments between random points, the same ones in every run
+		Random random = new Random(SEED);
+		Edge[] segments = new Edge[1000];
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = new Edge(new Node(random.nextDouble(), random.nextDouble()), new Node(random.nextDouble(), random.nextDouble()));
+		}
+		harness.measure("segmentsIntersect 10^6 pairs", () -> {
+			int intersections = 0;
+			for (Edge e1 : segments) {
+				for (Edge e2 : segments) {
+					if (FlipGraph.segmentsIntersect(e1, e2))
+						intersections++;
+				}
+			}
+			return intersections;
+		});
+
+		FlipGraph f7 = newFlipGraph(graphs7);
+		FlipGraph f8 = newFlipGraph(graphs8);
+		harness.measure("findRainbowCycle 7gon.txt r=1", () -> f7.findRainbowCycle(1, "", 1).size());
+		harness.measure("findRainbowCycle 7gon.txt r=2", () -> f7.findRainbowCycle(2, "", 1).size());
+		harness.measure("findRainbowCycle 8gon.txt r=1", () -> f8.findRainbowCycle(1, "", 1).size());
+		harness.measure("findRainbowCycle 8gon.txt r=1 parallel", () -> f8.findRainbowCycle(1, "").size());
+
+		// 4 * 14 diagonals don't fit into 42 triangulations, so the search returns before it starts
+		harness.measure("findRainbowCycle 7gon.txt r=4 no fit", () -> f7.findRainbowCycle(4, "", 1).size() + f7.lastSearch.getPruningStatistics().length());
+
+		harness.compareWithBaseline();
+	}
+
+	static FlipGraph newFlipGraph(List<Graph> graphs) {
+		FlipGraph f = new FlipGraph();
+		f.addGraphs(graphs);
+		f.options.feasibilityPruning = PRUNING;
+		f.symmetryReduction = SYMMETRY;
+		f.options.termination = Termination.valueOf(System.getProperty("termination", "PER_START_NODE").toUpperCase());
+		f.options.cycleLimit = Integer.getInteger("cycleLimit", 0);
+		f.options.timeLimit = Integer.getInteger("timeLimit", 0);
+		f.options.meetInTheMiddle = Boolean.getBoolean("meetInTheMiddle");
+		f.options.transpositionTableSize = Integer.getInteger("transpositionTable", 0);
+		if (System.getProperty("memoryBudget") != null)
+			f.options.memoryBudget = Long.getLong("memoryBudget") << 20;
+		return f;
+	}
+
+	static void timeSearch(String[] args, BenchmarkHarness harness) throws Exception {
+		List<Graph> graphs = main.loadGraphs(args[0]);
+		FlipGraph f = newFlipGraph(graphs);
+		System.out.println(args[0] + ": " + f.idToNode.length + " triangulations, " + f.idToArc.length + " arcs");
+
+		PrintStream out = System.out;
+		PrintStream nullStream = new PrintStream(OutputStream.nullOutputStream());
+		for (int i = 1; i < args.length; i++) {
+			int r = Integer.valueOf(args[i]);
+			long[] times = new long[harness.measuredRuns];
+			int cycles = 0;
+
+			// The workers report every step they take, which isn't part of what we measure
+			System.setOut(nullStream);
+			for (int run = 0; run < harness.warmupRuns + harness.measuredRuns; run++) {
+				long start = System.nanoTime();
+				f.findRainbowCycle(r, "");
+				cycles = f.lastSearch.getCycleCount();
+				if (run >= harness.warmupRuns)
+					times[run - harness.warmupRuns] = System.nanoTime() - start;
+			}
+			System.setOut(out);
+
+			Arrays.sort(times);
+			System.out.printf("r=%d: %d cycles, min %.1f ms, median %.1f ms%n", r, cycles, times[0] / 1e6,
+					times[harness.measuredRuns / 2] / 1e6);
+			System.out.println("  " + f.lastSearch.getPruningStatistics());
+		}
+	}
+}
@@ -0,0 +1,118 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Renders found cycles as GeoGebra code and appends them to the output file on a thread of its own.
+// Search threads only put cycles into a bounded queue. The writer takes them out in batches and 
+// keeps the file open until close() is called.
+class CycleWriter implements Runnable {
+	static final int QUEUE_CAPACITY = 1024;
+	static final int BATCH_SIZE = 64;
+	
+	static class QueuedCycle {
+		int cycleNumber;
+		List<Arc> cycle;
+		
+		QueuedCycle(int cycleNumber, List<Arc> cycle) {
+			this.cycleNumber = cycleNumber;
+			this.cycle = cycle;
+		}
+	}
+	
+	// Put into the queue by close() to tell the writer thread that no more cycles follow
+	static final QueuedCycle END_OF_OUTPUT = new QueuedCycle(0, null);
+	
+	FlipGraph flipGraph;
+	BlockingQueue<QueuedCycle> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	BufferedWriter outputWriter;
+	Thread writerThread;
+	
+	CycleWriter(FlipGraph flipGraph, String outputFile) throws IOException {
+		this.flipGraph = flipGraph;
+		this.outputWriter = Files.newBufferedWriter(Paths.get(outputFile), StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND);
+		this.writerThread = new Thread(this, "CycleWriter");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+	
+	void write(int cycleNumber, List<Arc> cycle) {
+		try {
+			queue.put(new QueuedCycle(cycleNumber, cycle));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	// Waits until all queued cycles are written, then flushes and closes the file
+	void close() {
+		try {
+			queue.put(END_OF_OUTPUT);
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		List<QueuedCycle> batch = new ArrayList<>(BATCH_SIZE);
+		boolean failed = false;
+		try {
+			while (true) {
+				batch.add(queue.take());
+				queue.drainTo(batch, BATCH_SIZE - 1);
+				
+				for (QueuedCycle entry : batch) {
+					if (entry == END_OF_OUTPUT) {
+						outputWriter.close();
+						return;
+					}
+					
+					// After a failure, keep taking cycles so that the search never gets stuck on a full queue
+					if (failed)
+						continue;
+					
+					// Whatever goes wrong rendering or writing a cycle, the queue must keep moving
+					try {
+						writeCycle(entry.cycleNumber, entry.cycle);
+					} catch (IOException | RuntimeException e) {
+						System.out.println(e);
+						failed = true;
+					}
+				}
+				batch.clear();
+				
+				// A failed flush is a failed write too
+				if (!failed && queue.isEmpty()) {
+					try {
+						outputWriter.flush();
+					} catch (IOException | RuntimeException e) {
+						System.out.println(e);
+						failed = true;
+					}
+				}
+			}
+		} catch (Exception e) {
+			System.out.println(e);
+		}
+	}
+	
+	private void writeCycle(int cycleNumber, List<Arc> cycle) throws IOException {
+		for (int i = 0; i < cycle.size(); i++) {
+			Graph iGraph = cycle.get(i).v2;
+			Edge iDiagonal = cycle.get(i).diagonal;
+			
+			// A label of the diagonal appearing in this graph
+			String label = "Text(\"e_{" + flipGraph.diagonalToIdx.get(iDiagonal)+ "}\",";
+			label += iGraph.getNodes().get(0).getGeogebraCode(i * 3+ 0.1, 0 + 3 * cycleNumber-0.1) + ")";
+			
+			outputWriter.write(label);
+			outputWriter.newLine();
+			outputWriter.write(iGraph.getGeogebraCode(i * 3, 0 + 3 * cycleNumber));
+			outputWriter.newLine();
+		}
+		outputWriter.newLine();
+	}
+}
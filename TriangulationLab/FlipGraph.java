@@ -1,160 +1,8 @@
 import java.io.*;
+import java.nio.LongBuffer;
+import java.nio.file.*;
 import java.util.*;
 
-class WorkerThread extends Thread {
-	FlipGraph flipGraph;
-	Graph startNode;
-	List<List<Arc>> foundCycles;
-	int r;
-	String outputFile;
-	static int runningThreadsCounter = 0;
-	WorkerThread(FlipGraph flipGraph, Graph startPoint, int r, List<List<Arc>> foundCycles, String outputFile) {
-		this.startNode = startPoint;
-		this.flipGraph = flipGraph;
-		this.r = r;
-		this.foundCycles = foundCycles;
-		this.outputFile = outputFile;
-	}
-
-	private boolean areCyclesInverse(List<Arc> a, List<Arc> b) {
-		// Cycle 1: a -> b -> c -> d -> e -> a
-		// Inverse Cycle: a <- e <- d <- c <- b <- a
-		
-		if (a.size() != b.size())
-			return false;
-
-		for (int i = 0; i < a.size(); i++) {
-			if (!a.get(i).v1.equals(b.get(b.size() - 1 - i).v1) && !a.get(i).v2.equals(b.get(b.size() - 1 - i).v2)) {
-				return false;
-			}
-		}
-		return true;
-	}
-
-
-	private void addCycle(List<Arc> newCycle) {
-		
-		// Make first arc the smallest arc. This way, where a cycle begins is always defined.
-		Arc firstArc = null;
-		for (Arc arc : newCycle) {
-			if (firstArc == null || arc.hashCode() < firstArc.hashCode()) 
-				firstArc = arc;
-		}
-		Collections.rotate(newCycle, -newCycle.indexOf(firstArc));
-		
-		// Check whether the same cycle, inverted however, had been found already. If yes, return without adding anything.
-		for (List<Arc> cycle : foundCycles) {
-			if (areCyclesInverse(cycle, newCycle)) 
-				return;
-		}
-		
-		if (!foundCycles.contains(newCycle)) {
-			foundCycles.add(newCycle);
-			System.out.println("Cycle number " + foundCycles.size() + " found.");
-			
-			if(outputFile.isEmpty()) return;
-			
-			PrintWriter outputWriter = null;
-			try {
-				outputWriter = new PrintWriter(new BufferedWriter(new FileWriter(outputFile, true)));
-				for (int i = 0; i < newCycle.size(); i++) {
-					Graph iGraph = newCycle.get(i).v2;
-					Edge iDiagonal = newCycle.get(i).diagonal;
-					
-					// A label of the diagonal appearing in this graph
-					String label = "Text(\"e_{" + flipGraph.diagonalToIdx.get(iDiagonal)+ "}\",";
-					label += iGraph.nodes.get(0).getGeogebraCode(i * 3+ 0.1, 0 + 3 * foundCycles.size()-0.1) + ")";
-					
-					outputWriter.println(label);
-					outputWriter.println(iGraph.getGeogebraCode(i * 3, 0 + 3 * foundCycles.size()));
-					
-				}
-				outputWriter.println();
-				outputWriter.close();
-				
-			} catch (Exception e) {
-				System.out.println(e);
-			}
-		}
-	}
-
-	@Override
-	public void run() {
-		System.out.println("Started: Thread" +  ++WorkerThread.runningThreadsCounter);
-		
-		Stack<Arc> arcStack = new Stack<>();
-		int[] timesFound = new int[flipGraph.diagonalToIdx.keySet().size()];
-
-		Map<Graph, List<Arc>> remainingArcs = new HashMap<>();
-		for (Graph g : flipGraph.nodes) {
-			remainingArcs.put(g, new ArrayList<>(flipGraph.nodeToOutgoingArcs.get(g)));
-		}
-
-		Graph currentNode = startNode;
-		List<Arc> currentRemainingArcs = remainingArcs.get(currentNode);
-		while(true) {
-			if(!currentRemainingArcs.isEmpty()) {
-				Arc currentArc = currentRemainingArcs.remove(0);
-				
-				// if currentArc leads to a visited node that's not the first node in the cycle, move to a next arc.
-				if(currentArc.v2.id != startNode.id) {
-					boolean nodeAlreadyVisited = false;
-					for(Arc arc: arcStack) {
-						if(arc.v2.id == currentArc.v2.id) {
-							nodeAlreadyVisited = true;
-							break;
-						}
-					}
-					if(nodeAlreadyVisited) continue;
-				}
-				
-				int appearingDiagonalIdx = flipGraph.diagonalToIdx.get(currentArc.diagonal);
-				if(timesFound[appearingDiagonalIdx] < r) {
-					
-					timesFound[appearingDiagonalIdx]++;
-					arcStack.push(currentArc);
-					
-					// if we came back to first node in the cycle, and the cycle is complete, we have found a rainbow cycle
-					if(currentArc.v2.id == startNode.id) {
-						if(arcStack.size() == flipGraph.diagonalToIdx.keySet().size()*r) {
-							synchronized (flipGraph) {
-								List<Arc> foundCycle = new ArrayList<>(arcStack);
-								addCycle(foundCycle);
-								return;
-							}
-						}
-						
-						// Go back one step, and keep searching for other rainbow cycles
-						timesFound[appearingDiagonalIdx]--;
-						arcStack.pop();
-						
-					} else {
-						// newCurrentNode get a fresh batch of arcs. 
-						// This allows it to be used in exploring different cycles. 
-						// What's done upon exploring cycle A shouldn't affect exploration of cycle B. 
-						currentNode = currentArc.v2;
-						remainingArcs.get(currentNode).clear();
-						remainingArcs.get(currentNode).addAll(flipGraph.nodeToOutgoingArcs.get(currentNode));
-						currentRemainingArcs = remainingArcs.get(currentNode);
-					}
-				}
-			} else {
-				// All arcs of startNode were used (arcStack is empty in this case). Nothing to be done anymore. 
-				if(currentNode.id == startNode.id) {
-					System.out.println("Finished:" +  WorkerThread.runningThreadsCounter--);
-					return;
-				}
-				
-				// No? Then go back one step.
-				int diagonalIdx = flipGraph.diagonalToIdx.get(arcStack.pop().diagonal);
-				timesFound[diagonalIdx]--;
-				currentNode = arcStack.isEmpty()? startNode: arcStack.peek().v2;
-				currentRemainingArcs = remainingArcs.get(currentNode);
-			}	
-		}
-	}
-}
-
 class Arc {
 	Graph v1, v2;
 	Edge diagonal;
@@ -189,90 +37,183 @@ class Arc {
 
 }
 
-public class FlipGraph {
+public class FlipGraph implements LabelledGraph {
 	List<Graph> nodes = new ArrayList<>();
 	List<Arc> arcs = new ArrayList<>();
 	Map<Edge, Integer> diagonalToIdx = new HashMap<>();
-	Map<Graph, Set<Arc>> nodeToOutgoingArcs = new HashMap<>();
+	Map<Graph, List<Arc>> nodeToOutgoingArcs = new HashMap<>();
 	Map<Edge, Set<Graph>> diagonalToNodesContainingIt = new HashMap<>();
+	
+	// Compressed sparse row form of the flip graph, built by compile().
+	// Triangulations and diagonals get dense ids; the outgoing arcs of node v are 
+	// arcOffsets[v]..arcOffsets[v+1]-1, leading to arcTargets[a] and flipping in diagonal arcDiagonals[a].
+	Graph[] idToNode;
+	Edge[] idToDiagonal;
+	Arc[] idToArc;
+	int[] arcOffsets;
+	int[] arcTargets;
+	int[] arcDiagonals;
+	
+	// Point permutations generating the symmetries of the flip graph. Detected from the point set unless given. 
+	// Symmetric start nodes and cycles are then searched and reported only once.
+	List<int[]> pointSymmetries;
+	boolean symmetryReduction = true;
+	
+	// Pruning, checkpoints, termination and the other settings of the rainbow cycle search
+	SearchOptions options = new SearchOptions();
+	
+	// The most recent search, for its statistics
+	RainbowSearch lastSearch;
 
-	public void addGraph(Graph g) {
-		if (!nodes.isEmpty()) {
-			for (Graph v : nodes) {
-				List<Edge> a = new ArrayList<>(v.edges);
-				List<Edge> b = new ArrayList<>(g.edges);
-
-				// Check whether difference is only one edge
-				a.removeAll(b);
-				if (a.size() != 1)
-					continue;
-				Edge d1 = a.remove(0);
-
-				a.addAll(v.edges);
-				b.removeAll(a);
-				if (b.size() != 1)
-					continue;
-				Edge d2 = b.remove(0);
-
-				// Check whether both edges constitute a flip (d2 intersects only d1 in G1)
-				if (!segmentsIntersect(d1, d2))
-					continue;
-
-				boolean notFlip = false;
-				for (Edge e : v.edges) {
-					if (e.equals(d1))
-						continue;
-					if (segmentsIntersect(d2, e))
-						notFlip = true;
-				}
-				if (notFlip)
-					continue;
+	// All graphs added so far, by their edges
+	Map<LongBuffer, Graph> edgesToNode = new HashMap<>();
+	
+	// Point configuration shared by all graphs
+	PointSet pointSet;
 
-				// Save corresponding diagonals along with their indicies
-				if (!diagonalToIdx.containsKey(d1))
-					diagonalToIdx.put(d1, diagonalToIdx.size());
-				if (!diagonalToIdx.containsKey(d2))
-					diagonalToIdx.put(d2, diagonalToIdx.size());
-				
-				// Create and save arcs
-				Arc a1 = new Arc(v, g, d2);
-				Arc a2 = new Arc(g, v, d1);
-				arcs.add(a1);
-				arcs.add(a2);
+	// Two triangulations are flip-adjacent exactly when they coincide after leaving out one edge each. 
+	// The only triangulation sharing "g minus d1" with g replaces d1 by the pair d2 that crosses d1 
+	// and no other edge of g, so each neighbor of g is found by looking up its edges.
+	public void addGraph(Graph g) {
+		if (pointSet == null)
+			pointSet = g.pointSet;
+		else if (pointSet != g.pointSet)
+			throw new IllegalArgumentException("All triangulations of a flip graph must share one point set");
+		
+		long[] neighborBits = new long[g.edgeBits.length];
+		for (int d2 = 0; d2 < pointSet.pairCount; d2++) {
+			if (g.containsEdge(d2))
+				continue;
+			int d1 = pointSet.getOnlyCrossedEdge(g.edgeBits, d2);
+			if (d1 < 0)
+				continue;
+			
+			System.arraycopy(g.edgeBits, 0, neighborBits, 0, neighborBits.length);
+			neighborBits[d1 >>> 6] ^= 1L << d1;
+			neighborBits[d2 >>> 6] ^= 1L << d2;
+			Graph v = edgesToNode.get(LongBuffer.wrap(neighborBits));
+			if (v != null)
+				addFlip(v, g, pointSet.getEdge(d2), pointSet.getEdge(d1));
+		}
+		
+		edgesToNode.putIfAbsent(LongBuffer.wrap(g.edgeBits), g);
+		nodes.add(g);
+	}
+	
+	// Adds all graphs and compiles the flip graph afterwards
+	public void addGraphs(Collection<Graph> graphs) {
+		if (edgesToNode.isEmpty())
+			edgesToNode = new HashMap<>(2 * graphs.size());
+		
+		for (Graph g : graphs) {
+			addGraph(g);
+		}
+		compile();
+	}
+	
+	// Saves the flip from v to g, which removes d1 and adds d2, as a pair of arcs
+	private void addFlip(Graph v, Graph g, Edge d1, Edge d2) {
+		// Save corresponding diagonals along with their indicies
+		if (!diagonalToIdx.containsKey(d1))
+			diagonalToIdx.put(d1, diagonalToIdx.size());
+		if (!diagonalToIdx.containsKey(d2))
+			diagonalToIdx.put(d2, diagonalToIdx.size());
+		
+		// Create and save arcs
+		Arc a1 = new Arc(v, g, d2);
+		Arc a2 = new Arc(g, v, d1);
+		arcs.add(a1);
+		arcs.add(a2);
+
+		// Add both arcs to a Node->OutgoingArcs Map to use later for backtracking
+		if (!nodeToOutgoingArcs.containsKey(a1.v1)) {
+			List<Arc> outgoingArcs = new ArrayList<>();
+			outgoingArcs.add(a1);
+			nodeToOutgoingArcs.put(a1.v1, outgoingArcs);
+		} else {
+			nodeToOutgoingArcs.get(a1.v1).add(a1);
+		}
 
-				// Add both arcs to a Node->OutgoingArcs Map to use later for backtracking
-				if (!nodeToOutgoingArcs.containsKey(a1.v1)) {
-					Set<Arc> outgoingArcs = new HashSet<>();
-					outgoingArcs.add(a1);
-					nodeToOutgoingArcs.put(a1.v1, outgoingArcs);
-				} else {
-					nodeToOutgoingArcs.get(a1.v1).add(a1);
-				}
+		if (!nodeToOutgoingArcs.containsKey(a2.v1)) {
+			List<Arc> outgoingArcs = new ArrayList<>();
+			outgoingArcs.add(a2);
+			nodeToOutgoingArcs.put(a2.v1, outgoingArcs);
+		} else {
+			nodeToOutgoingArcs.get(a2.v1).add(a2);
+		}
+		
+		// Fill a diagonal->ContainingNodes Map to use later for backtracking
+		Set<Graph> nodesContainingD1 = diagonalToNodesContainingIt.get(d1) == null? new HashSet<>(): diagonalToNodesContainingIt.get(d1);
+		nodesContainingD1.add(v);
+		diagonalToNodesContainingIt.put(d1, nodesContainingD1);
+		
+		Set<Graph> nodesContainingD2 = diagonalToNodesContainingIt.get(d2) == null? new HashSet<>(): diagonalToNodesContainingIt.get(d2);
+		nodesContainingD2.add(g);
+		diagonalToNodesContainingIt.put(d2, nodesContainingD2);
+	}
 
-				if (!nodeToOutgoingArcs.containsKey(a2.v1)) {
-					Set<Arc> outgoingArcs = new HashSet<>();
-					outgoingArcs.add(a2);
-					nodeToOutgoingArcs.put(a2.v1, outgoingArcs);
-				} else {
-					nodeToOutgoingArcs.get(a2.v1).add(a2);
-				}
-				
-				// Fill a diagonal->ContainingNodes Map to use later for backtracking
-				Set<Graph> nodesContainingD1 = diagonalToNodesContainingIt.get(d1) == null? new HashSet<>(): diagonalToNodesContainingIt.get(d1);
-				nodesContainingD1.add(v);
-				diagonalToNodesContainingIt.put(d1, nodesContainingD1);
-				
-				Set<Graph> nodesContainingD2 = diagonalToNodesContainingIt.get(d2) == null? new HashSet<>(): diagonalToNodesContainingIt.get(d2);
-				nodesContainingD2.add(g);
-				diagonalToNodesContainingIt.put(d2, nodesContainingD2);
-			}
-		}	
+	// Freezes the flip graph into primitive arrays. Has to be called again after adding further graphs.
+	public void compile() {
+		idToNode = nodes.toArray(new Graph[0]);
+		Map<Graph, Integer> nodeToId = new IdentityHashMap<>();
+		for (int i = 0; i < idToNode.length; i++) {
+			nodeToId.put(idToNode[i], i);
+		}
 		
-		nodes.add(g);
+		idToDiagonal = new Edge[diagonalToIdx.size()];
+		for (Edge diagonal : diagonalToIdx.keySet()) {
+			idToDiagonal[diagonalToIdx.get(diagonal)] = diagonal;
+		}
+		
+		idToArc = new Arc[arcs.size()];
+		arcOffsets = new int[idToNode.length + 1];
+		arcTargets = new int[arcs.size()];
+		arcDiagonals = new int[arcs.size()];
+		int arcId = 0;
+		for (int i = 0; i < idToNode.length; i++) {
+			arcOffsets[i] = arcId;
+			List<Arc> outgoingArcs = nodeToOutgoingArcs.get(idToNode[i]);
+			if (outgoingArcs == null)
+				continue;
+			
+			for (Arc arc : outgoingArcs) {
+				idToArc[arcId] = arc;
+				arcTargets[arcId] = nodeToId.get(arc.v2);
+				arcDiagonals[arcId] = diagonalToIdx.get(arc.diagonal);
+				arcId++;
+			}
+		}
+		arcOffsets[idToNode.length] = arcId;
+	}
+	
+	// The compiled flip graph as the rainbow cycle search sees it, labelled by the diagonal each arc flips in
+	@Override
+	public int getNodeCount() {
+		return idToNode.length;
+	}
+	
+	@Override
+	public int getLabelCount() {
+		return idToDiagonal.length;
+	}
+	
+	@Override
+	public int getFirstArc(int node) {
+		return arcOffsets[node];
+	}
+	
+	@Override
+	public int getArcTarget(int arc) {
+		return arcTargets[arc];
+	}
+	
+	@Override
+	public int getArcLabel(int arc) {
+		return arcDiagonals[arc];
 	}
 
 	// See: https://www.geeksforgeeks.org/check-if-two-given-line-segments-intersect
-	private int getOrientation(Node v1, Node v2, Node v3) {
+	private static int getOrientation(Node v1, Node v2, Node v3) {
 		double val = (v2.y - v1.y) * (v3.x - v2.x) - (v2.x - v1.x) * (v3.y - v2.y);
 
 		if (val == 0) {
@@ -284,7 +225,7 @@ public class FlipGraph {
 		}
 	}
 
-	private boolean pointOnSegment(Node x, Node p, Node r) {
+	private static boolean pointOnSegment(Node x, Node p, Node r) {
 		if (x.x <= Math.max(p.x, r.x) && x.x >= Math.min(p.x, r.x) && x.y <= Math.max(p.y, r.y)
 				&& x.y >= Math.min(p.y, r.y)) {
 			return true;
@@ -293,7 +234,7 @@ public class FlipGraph {
 		}
 	}
 
-	boolean segmentsIntersect(Edge e1, Edge e2) {
+	static boolean segmentsIntersect(Edge e1, Edge e2) {
 		if ((e1.contains(e2.v1) || e1.contains(e2.v2)) && !e1.equals(e2))
 			return false;
 
@@ -322,9 +263,15 @@ public class FlipGraph {
 
 
 	public List<List<Arc>> findRainbowCycle(int r, String outputFile) {
+		return findRainbowCycle(r, outputFile, Runtime.getRuntime().availableProcessors());
+	}
+	
+	public List<List<Arc>> findRainbowCycle(int r, String outputFile, int parallelism) {
+		if (arcOffsets == null || idToNode.length != nodes.size())
+			compile();
+		
 		// All graphs containing a diagonals: All cycles must contain one of these graphs. 
 		// We get a smallest set of graphs, that all contains the same diagonal.
-		// We use them as starting points.
 		Set<Graph> possibleStartPoints = new HashSet<>();
 		for(Edge diagonal: diagonalToNodesContainingIt.keySet()) {
 			if(possibleStartPoints.isEmpty() || possibleStartPoints.size() > diagonalToNodesContainingIt.get(diagonal).size()) {
@@ -332,89 +279,158 @@ public class FlipGraph {
 			}
 		}
 		
-		List<List<Arc>> foundCycles = new ArrayList<List<Arc>>();
-		List<Thread> workerThreadList = new ArrayList<>();
-		for(Graph startingPoint: possibleStartPoints) {
-			Thread workerThread  = new WorkerThread(this, startingPoint, r, foundCycles, outputFile);
-			workerThreadList.add(workerThread);
-		}
-		
-		for(Thread workerThread: workerThreadList) {
-			workerThread.start();
+		// Some symmetric image of each cycle passes through any given node of an orbit it meets. 
+		// So we use one of these graphs per orbit as starting point.
+		int[][] nodeSymmetries = getNodeSymmetries();
+		boolean[] covered = new boolean[idToNode.length];
+		int[] startNodes = new int[possibleStartPoints.size()];
+		int startNodesCount = 0;
+		for(int node = 0; node < idToNode.length; node++) {
+			if(covered[node] || !possibleStartPoints.contains(idToNode[node]))
+				continue;
+			
+			for (int[] symmetry : nodeSymmetries) {
+				covered[symmetry[node]] = true;
+			}
+			startNodes[startNodesCount++] = node;
 		}
+		startNodes = Arrays.copyOf(startNodes, startNodesCount);
+		if (nodeSymmetries.length > 1)
+			System.out.println(nodeSymmetries.length + " symmetries, searching from " + startNodesCount + " of " + possibleStartPoints.size() + " start nodes");
 		
-		for(Thread workerThread: workerThreadList) {
+		lastSearch = new RainbowSearch(this, r, options, nodeSymmetries);
+		CycleWriter cycleWriter = null;
+		if(!outputFile.isEmpty()) {
 			try {
-				workerThread.join();
-			} catch (Exception e) {
-				e.printStackTrace();
+				CycleWriter writer = new CycleWriter(this, outputFile);
+				lastSearch.cycleListener = (cycleNumber, arcCycle) -> writer.write(cycleNumber, toArcs(arcCycle));
+				cycleWriter = writer;
+			} catch (IOException e) {
+				System.out.println(e);
 			}
 		}
 		
+		List<int[]> arcCycles;
+		try {
+			arcCycles = lastSearch.run(startNodes, parallelism);
+		} finally {
+			if(cycleWriter != null)
+				cycleWriter.close();
+		}
+		
+		List<List<Arc>> foundCycles = new ArrayList<>();
+		for (int[] arcCycle : arcCycles) {
+			foundCycles.add(toArcs(arcCycle));
+		}
 		return foundCycles;
 	}
 	
+	// The arcs of a cycle given by their ids
+	List<Arc> toArcs(int[] arcCycle) {
+		List<Arc> cycle = new ArrayList<>();
+		for (int arc : arcCycle) {
+			cycle.add(idToArc[arc]);
+		}
+		return cycle;
+	}
 	
-	public boolean isRainbowCycle(List<Graph> cycle, int r) {
+	// The permutations of the node ids induced by the point symmetries, the identity first
+	int[][] getNodeSymmetries() {
+		int[] identity = new int[idToNode.length];
+		for (int v = 0; v < identity.length; v++) {
+			identity[v] = v;
+		}
+		if (!symmetryReduction || pointSet == null)
+			return new int[][] { identity };
 		
-		for (int i = 0; i < cycle.size(); i++) {
-			for (int j = i+1; j < cycle.size(); j++) {
-				Set<Edge> iSet = new HashSet<>(cycle.get(i).edges);
-				Set<Edge> jSet = new HashSet<>(cycle.get(j).edges);
-				if(iSet.equals(jSet)) 
-					return false;
+		if (pointSymmetries == null)
+			pointSymmetries = pointSet.getAutomorphisms();
+		List<int[]> group = PointSet.generateGroup(pointSymmetries, pointSet.points.length);
+		
+		Map<LongBuffer, Integer> edgesToId = new HashMap<>(2 * idToNode.length);
+		for (int v = 0; v < idToNode.length; v++) {
+			edgesToId.put(LongBuffer.wrap(idToNode[v].edgeBits), v);
+		}
+		
+		int[][] nodeSymmetries = new int[group.size()][];
+		nodeSymmetries[0] = identity;
+		for (int g = 1; g < group.size(); g++) {
+			int[] pointImage = group.get(g);
+			int[] pairImage = new int[pointSet.pairCount];
+			for (int pair = 0; pair < pairImage.length; pair++) {
+				pairImage[pair] = pointSet.pairIndex(pointImage[pointSet.pairToFirst[pair]], pointImage[pointSet.pairToSecond[pair]]);
+			}
+			
+			nodeSymmetries[g] = new int[idToNode.length];
+			for (int v = 0; v < idToNode.length; v++) {
+				Graph node = idToNode[v];
+				long[] imageBits = new long[pointSet.words];
+				for (int pair = node.nextEdge(0); pair >= 0; pair = node.nextEdge(pair + 1)) {
+					imageBits[pairImage[pair] >>> 6] |= 1L << pairImage[pair];
+				}
+				
+				// Without all triangulations in the input, a symmetry may lead out of the flip graph
+				Integer imageId = edgesToId.get(LongBuffer.wrap(imageBits));
+				if (imageId == null) {
+					System.out.println("The triangulations aren't closed under the symmetries of the point set, searching without them");
+					return new int[][] { identity };
+				}
+				nodeSymmetries[g][v] = imageId;
 			}
 		}
+		return nodeSymmetries;
+	}
+	
+	
+	public boolean isRainbowCycle(List<Graph> cycle, int r) {
+		PointSet pointSet = cycle.get(0).pointSet;
 		
-		Map<Edge, Integer> appearanceTimes = new HashMap<>();
+		List<long[]> edgeBits = new ArrayList<>();
+		Set<Graph> distinctGraphs = new HashSet<>();
+		for (Graph g : cycle) {
+			edgeBits.add(g.edgeBits);
+			if (!distinctGraphs.add(g))
+				return false;
+		}
+		
+		int[] appearanceTimes = new int[pointSet.pairCount];
 		for (int i = 0; i < cycle.size(); i++) {
 			int j = i+1;
 			if(j == cycle.size()) 
 				j = 0;
 			
-			List<Edge> a = new ArrayList<>(cycle.get(i).edges);
-			List<Edge> b = new ArrayList<>(cycle.get(j).edges);
-
-			// Check whether difference is only one edge
-			a.removeAll(b);
-			if (a.size() != 1)
-				return false;
-			Edge d1 = a.remove(0);
-
-			a.addAll(cycle.get(i).edges);
-			b.removeAll(a);
-			if (b.size() != 1)
+			// Check whether difference is only one edge: d1 in graph i and d2 in graph j
+			int d1 = -1, d2 = -1;
+			long[] a = edgeBits.get(i);
+			long[] b = edgeBits.get(j);
+			for (int w = 0; w < a.length; w++) {
+				long onlyInA = a[w] & ~b[w];
+				long onlyInB = b[w] & ~a[w];
+				if (onlyInA != 0) {
+					if (d1 >= 0 || Long.bitCount(onlyInA) != 1)
+						return false;
+					d1 = w * 64 + Long.numberOfTrailingZeros(onlyInA);
+				}
+				if (onlyInB != 0) {
+					if (d2 >= 0 || Long.bitCount(onlyInB) != 1)
+						return false;
+					d2 = w * 64 + Long.numberOfTrailingZeros(onlyInB);
+				}
+			}
+			if (d1 < 0 || d2 < 0)
 				return false;
-			Edge d2 = b.remove(0);
 
 			// Check whether both edges constitute a flip (d2 intersects only d1 in G1)
-			if (!segmentsIntersect(d1, d2)) {
+			if (!pointSet.isFlip(a, d1, d2))
 				return false;
-			}
 
-			boolean notFlip = false;
-			for (Edge e : cycle.get(i).edges) {
-				if (e.equals(d1))
-					continue;
-				if (segmentsIntersect(d2, e))
-					notFlip = true;
-			}
-			if (notFlip)
+			if (appearanceTimes[d2] == r)
 				return false;
-
-			if (!appearanceTimes.containsKey(d2)) {
-				appearanceTimes.put(d2, 1);
-			} else {
-				if(appearanceTimes.get(d2) == r) {
-					return false;
-				} else {
-					appearanceTimes.put(d2, appearanceTimes.get(d2)+1);
-				}
-			}
+			appearanceTimes[d2]++;
 		}
 		
-		for(Edge d: appearanceTimes.keySet()) {
-			if(appearanceTimes.get(d) != r) 
+		for (int times : appearanceTimes) {
+			if (times != 0 && times != r) 
 				return false;
 		}
 		
@@ -0,0 +1,93 @@
+import java.nio.LongBuffer;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Enumerates all triangulations of a point set by a breadth first search over flips,
+// so no triangulation list has to be exported from SageMath. Each level of the search
+// is expanded in parallel; the flips are found through the crossing matrix of the PointSet.
+class FlipGraphGenerator {
+	PointSet pointSet;
+	long nanosSpent;
+
+	FlipGraphGenerator(PointSet pointSet) {
+		this.pointSet = pointSet;
+	}
+
+	// Vertices of a regular n-gon on the unit circle, starting at (0, 1)
+	static List<Node> regularPolygon(int n) {
+		List<Node> points = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			double angle = 2 * Math.PI * i / n;
+			points.add(new Node(Math.sin(angle), Math.cos(angle)));
+		}
+		return points;
+	}
+
+	// Any maximal set of pairwise non-crossing segments is a triangulation
+	long[] getStartTriangulation() {
+		long[] edgeBits = new long[pointSet.words];
+		for (int pair = 0; pair < pointSet.pairCount; pair++) {
+			long[] crossed = pointSet.crossings[pair];
+			boolean crossesEdge = false;
+			for (int w = 0; w < pointSet.words && !crossesEdge; w++) {
+				crossesEdge = (crossed[w] & edgeBits[w]) != 0;
+			}
+			if (!crossesEdge)
+				edgeBits[pair >>> 6] |= 1L << pair;
+		}
+		return edgeBits;
+	}
+
+	// All triangulations reached by one flip: d2 may replace d1 iff d1 is the only edge it crosses
+	private Stream<LongBuffer> getNeighbors(LongBuffer edges) {
+		long[] edgeBits = edges.array();
+		List<LongBuffer> neighbors = new ArrayList<>();
+		for (int d2 = 0; d2 < pointSet.pairCount; d2++) {
+			if ((edgeBits[d2 >>> 6] & (1L << d2)) != 0)
+				continue;
+			int d1 = pointSet.getOnlyCrossedEdge(edgeBits, d2);
+			if (d1 < 0)
+				continue;
+
+			long[] neighborBits = edgeBits.clone();
+			neighborBits[d1 >>> 6] ^= 1L << d1;
+			neighborBits[d2 >>> 6] ^= 1L << d2;
+			neighbors.add(LongBuffer.wrap(neighborBits));
+		}
+		return neighbors.stream();
+	}
+
+	// All triangulations of the point set in BFS order from the start triangulation
+	List<Graph> generateGraphs() {
+		long start = System.nanoTime();
+
+		LongBuffer startEdges = LongBuffer.wrap(getStartTriangulation());
+		Set<LongBuffer> seen = new HashSet<>();
+		seen.add(startEdges);
+		List<LongBuffer> order = new ArrayList<>();
+		order.add(startEdges);
+
+		// seen is only read while a level is expanded and only written in between.
+		// distinct() on the ordered stream keeps the order independent of the thread timing.
+		List<LongBuffer> frontier = Collections.singletonList(startEdges);
+		while (!frontier.isEmpty()) {
+			List<LongBuffer> nextFrontier = frontier.parallelStream()
+					.flatMap(this::getNeighbors)
+					.filter(neighbor -> !seen.contains(neighbor))
+					.distinct()
+					.collect(Collectors.toList());
+			seen.addAll(nextFrontier);
+			order.addAll(nextFrontier);
+			frontier = nextFrontier;
+		}
+
+		List<Graph> graphs = new ArrayList<>(order.size());
+		for (LongBuffer edges : order) {
+			graphs.add(new Graph(pointSet, edges.array()));
+		}
+
+		nanosSpent = System.nanoTime() - start;
+		return graphs;
+	}
+}
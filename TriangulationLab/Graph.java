@@ -96,26 +96,58 @@ class Edge {
 }
 
 
+// A triangulation of a shared PointSet, stored as the bitset of its edges over the point set's pair indices.
+// Hashing and equality only look at the bitset, so they neither depend on the order of edges nor on Node.equals.
 public class Graph {
-	List<Node> nodes = new ArrayList<>();
-	List<Edge> edges = new ArrayList<>();
-	public int id;
-	static int counter = 0;
+	PointSet pointSet;
+	long[] edgeBits;
 
-	public Graph() {
-		this.id = counter++;
+	public Graph(PointSet pointSet, long[] edgeBits) {
+		this.pointSet = pointSet;
+		this.edgeBits = edgeBits;
+	}
+	
+	public List<Node> getNodes() {
+		return Arrays.asList(pointSet.points);
+	}
+	
+	public List<Edge> getEdges() {
+		List<Edge> edges = new ArrayList<>();
+		for (int pair = nextEdge(0); pair >= 0; pair = nextEdge(pair + 1)) {
+			edges.add(pointSet.getEdge(pair));
+		}
+		return edges;
+	}
+	
+	public boolean containsEdge(int pair) {
+		return (edgeBits[pair >>> 6] & (1L << pair)) != 0;
+	}
+	
+	// Smallest pair index of an edge that is at least from, or -1 
+	int nextEdge(int from) {
+		int w = from >>> 6;
+		if (w >= edgeBits.length)
+			return -1;
+		
+		long word = edgeBits[w] & (-1L << from);
+		while (word == 0) {
+			if (++w == edgeBits.length)
+				return -1;
+			word = edgeBits[w];
+		}
+		return w * 64 + Long.numberOfTrailingZeros(word);
 	}
 	
 	@Override
 	public String toString() {
 		
 		String retString = "V = {";
-		for(Node v: nodes) {
+		for(Node v: pointSet.points) {
 			retString += v + ", ";
 		}
 		retString = retString.substring(0, retString.length() - 2) +  "}, E={";
-		for(Edge e: edges) {
-			retString += "(" + nodes.indexOf(e.v1) + ", " + nodes.indexOf(e.v2) + "), ";
+		for (int pair = nextEdge(0); pair >= 0; pair = nextEdge(pair + 1)) {
+			retString += "(" + pointSet.pairToFirst[pair] + ", " + pointSet.pairToSecond[pair] + "), ";
 		}
 		retString = retString.substring(0, retString.length() - 2) +  "}";
 		
@@ -125,32 +157,21 @@ public class Graph {
 	
 	
 	public String getGeogebraCode(double offsetX, double offsetY) {
-		String retString = "";
+		StringBuilder retString = new StringBuilder();
 		
-		for(Edge e: edges) {
-			retString += e.getGeogebraCode(offsetX, offsetY)+"\n";
+		for(Edge e: getEdges()) {
+			retString.append(e.getGeogebraCode(offsetX, offsetY)).append("\n");
 		}
-		for(Node n: nodes) {
-			retString += n.getGeogebraCode(offsetX, offsetY)+"\n";
+		for(Node n: pointSet.points) {
+			retString.append(n.getGeogebraCode(offsetX, offsetY)).append("\n");
 		}
 		
-		return retString;
-	}
-	
-	public void offset(double x, double y) {
-		for(Node n: nodes) {
-			n.x += x;
-			n.y += y;
-		}
+		return retString.toString();
 	}
 
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + ((edges == null) ? 0 : edges.hashCode());
-		result = prime * result + ((nodes == null) ? 0 : nodes.hashCode());
-		return result;
+		return Arrays.hashCode(edgeBits);
 	}
 
 
@@ -166,37 +187,21 @@ public class Graph {
 			return false;
 		}
 		Graph other = (Graph) obj;
-		if (edges == null) {
-			if (other.edges != null) {
-				return false;
-			}
-		} else if (!edges.equals(other.edges)) {
-			return false;
-		}
-		if (nodes == null) {
-			if (other.nodes != null) {
-				return false;
-			}
-		} else if (!nodes.equals(other.nodes)) {
-			return false;
+		return pointSet == other.pointSet && Arrays.equals(edgeBits, other.edgeBits);
+	}
+	
+	private int[] getDegrees() {
+		int[] degrees = new int[pointSet.points.length];
+		for (int pair = nextEdge(0); pair >= 0; pair = nextEdge(pair + 1)) {
+			degrees[pointSet.pairToFirst[pair]]++;
+			degrees[pointSet.pairToSecond[pair]]++;
 		}
-		return true;
+		return degrees;
 	}
 	
 	public boolean isStarTriangulation() {
-		Map<Node, Integer> nodeToDegree = new HashMap<>();
-		
-		for(Node v: nodes) {
-			nodeToDegree.put(v, 0);
-		}
-		
-		for(Edge e: edges) {
-			nodeToDegree.put(e.v1, nodeToDegree.get(e.v1)+1);
-			nodeToDegree.put(e.v2, nodeToDegree.get(e.v2)+1);
-		}
-		
-		for(Node v: nodes) {
-			if(nodeToDegree.get(v) == nodes.size()-1) return true;
+		for(int degree: getDegrees()) {
+			if(degree == pointSet.points.length-1) return true;
 		}
 		
 		return false;
@@ -204,34 +209,23 @@ public class Graph {
 	}
 	
 	public boolean isZigZagTriangulation() {
-		Map<Node, Integer> nodeToDegree = new HashMap<>();
-		
-		for(Node v: nodes) {
-			nodeToDegree.put(v, 0);
-		}
-		
-		for(Edge e: edges) {
-			nodeToDegree.put(e.v1, nodeToDegree.get(e.v1)+1);
-			nodeToDegree.put(e.v2, nodeToDegree.get(e.v2)+1);
-		}
-		
 		int nodesWithDeg2 = 0;
 		int nodesWithDeg3 = 0;
 		int nodesWithDeg4 = 0;
 		
-		for(Node v: nodes) {
-			if(nodeToDegree.get(v) == 2) {
+		for(int degree: getDegrees()) {
+			if(degree == 2) {
 				nodesWithDeg2++;
-			} else if (nodeToDegree.get(v) == 3) {
+			} else if (degree == 3) {
 				nodesWithDeg3++;
-			} else if (nodeToDegree.get(v) == 4) {
+			} else if (degree == 4) {
 				nodesWithDeg4++;
 			} else {
 				return false;
 			}
 		}
 		
-		if(nodesWithDeg2 == 2 && nodesWithDeg3 == 2 && nodesWithDeg4 == nodes.size() - 4) {
+		if(nodesWithDeg2 == 2 && nodesWithDeg3 == 2 && nodesWithDeg4 == pointSet.points.length - 4) {
 			return true;
 		}
 			
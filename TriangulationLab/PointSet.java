@@ -0,0 +1,183 @@
+import java.util.*;
+
+// The point configuration shared by all triangulations of a flip graph. Every pair of points {i, j} 
+// gets an index, and whether two such segments cross is computed once into a bit matrix, 
+// so testing a flip doesn't need any geometry.
+class PointSet {
+	// Point sets are interned, so that triangulations read from the same configuration share one instance
+	private static Map<List<Node>, PointSet> interned = new HashMap<>();
+	
+	Node[] points;
+	int pairCount;
+	int words;
+	
+	// Endpoints of each pair and the segment between them
+	int[] pairToFirst;
+	int[] pairToSecond;
+	Edge[] pairToEdge;
+	
+	// Bit q of crossings[p] is set iff the segments of pairs p and q cross each other
+	long[][] crossings;
+	
+	PointSet(List<Node> points) {
+		this.points = points.toArray(new Node[0]);
+		int n = this.points.length;
+		pairCount = n * (n - 1) / 2;
+		words = (pairCount + 63) / 64;
+		crossings = new long[pairCount][words];
+		
+		pairToFirst = new int[pairCount];
+		pairToSecond = new int[pairCount];
+		pairToEdge = new Edge[pairCount];
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < n; j++) {
+				int pair = pairIndex(i, j);
+				pairToFirst[pair] = i;
+				pairToSecond[pair] = j;
+				pairToEdge[pair] = new Edge(this.points[i], this.points[j]);
+			}
+		}
+		Edge[] segments = pairToEdge;
+		
+		for (int p = 0; p < pairCount; p++) {
+			for (int q = p + 1; q < pairCount; q++) {
+				if (FlipGraph.segmentsIntersect(segments[p], segments[q])) {
+					crossings[p][q >>> 6] |= 1L << q;
+					crossings[q][p >>> 6] |= 1L << p;
+				}
+			}
+		}
+	}
+	
+	int pairIndex(int i, int j) {
+		if (i > j) {
+			int tmp = i;
+			i = j;
+			j = tmp;
+		}
+		return i * (2 * points.length - i - 1) / 2 + (j - i - 1);
+	}
+	
+	static synchronized PointSet intern(List<Node> points) {
+		return interned.computeIfAbsent(new ArrayList<>(points), PointSet::new);
+	}
+	
+	Edge getEdge(int pair) {
+		return pairToEdge[pair];
+	}
+	
+	// The edges of a triangulation, given as consecutive vertex indices, as a bitset over pair indices
+	long[] encode(int[] vertexPairs) {
+		long[] edgeBits = new long[words];
+		for (int i = 0; i + 1 < vertexPairs.length; i += 2) {
+			int pair = pairIndex(vertexPairs[i], vertexPairs[i + 1]);
+			edgeBits[pair >>> 6] |= 1L << pair;
+		}
+		return edgeBits;
+	}
+	
+	boolean cross(int p, int q) {
+		return (crossings[p][q >>> 6] & (1L << q)) != 0;
+	}
+	
+	// The only edge of the triangulation crossed by d2, or -1 if d2 crosses none or several of its edges
+	int getOnlyCrossedEdge(long[] edgeBits, int d2) {
+		long[] crossed = crossings[d2];
+		int crossedEdge = -1;
+		for (int w = 0; w < words; w++) {
+			long both = crossed[w] & edgeBits[w];
+			if (both == 0)
+				continue;
+			if (crossedEdge >= 0 || (both & (both - 1)) != 0)
+				return -1;
+			crossedEdge = w * 64 + Long.numberOfTrailingZeros(both);
+		}
+		return crossedEdge;
+	}
+	
+	// All permutations of the points that keep which segments cross, the identity included. 
+	// They map triangulations onto triangulations and flips onto flips.
+	List<int[]> getAutomorphisms() {
+		List<int[]> automorphisms = new ArrayList<>();
+		extendAutomorphism(0, new int[points.length], new boolean[points.length], automorphisms);
+		return automorphisms;
+	}
+	
+	// Tries every unused image for point i, backtracking as soon as a crossing isn't kept
+	private void extendAutomorphism(int i, int[] image, boolean[] used, List<int[]> automorphisms) {
+		if (i == points.length) {
+			automorphisms.add(image.clone());
+			return;
+		}
+		
+		for (int candidate = 0; candidate < points.length; candidate++) {
+			if (used[candidate])
+				continue;
+			
+			image[i] = candidate;
+			if (keepsCrossings(i, image)) {
+				used[candidate] = true;
+				extendAutomorphism(i + 1, image, used, automorphisms);
+				used[candidate] = false;
+			}
+		}
+	}
+	
+	// Compares the segments from point i to the points before it with all segments among points 0..i
+	private boolean keepsCrossings(int i, int[] image) {
+		for (int j = 0; j < i; j++) {
+			int p = pairIndex(i, j);
+			int pImage = pairIndex(image[i], image[j]);
+			for (int a = 0; a <= i; a++) {
+				for (int b = a + 1; b <= i; b++) {
+					if (cross(p, pairIndex(a, b)) != cross(pImage, pairIndex(image[a], image[b])))
+						return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	// The group generated by the given point permutations
+	static List<int[]> generateGroup(List<int[]> generators, int n) {
+		int[] identity = new int[n];
+		for (int i = 0; i < n; i++) {
+			identity[i] = i;
+		}
+		
+		Set<List<Integer>> seen = new HashSet<>();
+		List<int[]> group = new ArrayList<>();
+		seen.add(toList(identity));
+		group.add(identity);
+		for (int g = 0; g < group.size(); g++) {
+			for (int[] generator : generators) {
+				int[] product = new int[n];
+				for (int i = 0; i < n; i++) {
+					product[i] = generator[group.get(g)[i]];
+				}
+				if (seen.add(toList(product)))
+					group.add(product);
+			}
+		}
+		return group;
+	}
+	
+	private static List<Integer> toList(int[] permutation) {
+		List<Integer> list = new ArrayList<>();
+		for (int x : permutation) {
+			list.add(x);
+		}
+		return list;
+	}
+	
+	// Replacing d1 by d2 in a triangulation with the given edges is a flip iff d2 crosses d1 and no other edge
+	boolean isFlip(long[] edgeBits, int d1, int d2) {
+		long[] crossed = crossings[d2];
+		for (int w = 0; w < words; w++) {
+			long expected = w == d1 >>> 6 ? 1L << d1 : 0;
+			if ((crossed[w] & edgeBits[w]) != expected)
+				return false;
+		}
+		return true;
+	}
+}
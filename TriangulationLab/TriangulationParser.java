@@ -0,0 +1,158 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+
+// Reads input files of the form
+//   V=[[x0, y0],[x1, y1],...]
+//   T:B={{0, 1}, ...}, D={{1, 2}, ...}
+// byte by byte from a memory mapped file. The V= line has to come first. The rest of the file is cut 
+// into chunks at line breaks and the chunks are parsed in parallel. Every triangulation line directly 
+// becomes the bitset of its edges over the pair indices of the interned point set.
+class TriangulationParser {
+	static final int MIN_CHUNK_SIZE = 1 << 20;
+	
+	PointSet pointSet;
+	List<long[]> triangulations = new ArrayList<>();
+	long bytesRead;
+	long nanosSpent;
+	
+	void parse(String fileName) throws IOException {
+		long start = System.nanoTime();
+		
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			long size = channel.size();
+			
+			long firstLineEnd = nextLineStart(channel, 0, size);
+			ByteBuffer firstLine = channel.map(FileChannel.MapMode.READ_ONLY, 0, firstLineEnd);
+			if (firstLineEnd == 0 || firstLine.get(0) != 'V')
+				throw new IOException(fileName + " doesn't start with the point set (V=...)");
+			
+			double[] coordinates = parseDoubles(firstLine, 0, (int) firstLineEnd);
+			List<Node> points = new ArrayList<>();
+			for (int i = 0; i + 1 < coordinates.length; i += 2) {
+				points.add(new Node(coordinates[i], coordinates[i + 1]));
+			}
+			pointSet = PointSet.intern(points);
+			
+			// Move each chunk boundary behind the next line break
+			long rest = size - firstLineEnd;
+			int chunks = (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() * 4L, rest / MIN_CHUNK_SIZE));
+			long[] boundaries = new long[chunks + 1];
+			boundaries[0] = firstLineEnd;
+			boundaries[chunks] = size;
+			for (int i = 1; i < chunks; i++) {
+				boundaries[i] = nextLineStart(channel, Math.max(firstLineEnd + rest * i / chunks, boundaries[i - 1]), size);
+			}
+			
+			List<List<long[]>> parsedChunks = IntStream.range(0, chunks).parallel().mapToObj(i -> {
+				try {
+					return parseChunk(channel.map(FileChannel.MapMode.READ_ONLY, boundaries[i], boundaries[i + 1] - boundaries[i]), pointSet);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).collect(Collectors.toList());
+			
+			for (List<long[]> chunk : parsedChunks) {
+				triangulations.addAll(chunk);
+			}
+			bytesRead = size;
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		
+		nanosSpent = System.nanoTime() - start;
+	}
+	
+	double getThroughput() {
+		return (bytesRead / 1e6) / (nanosSpent / 1e9);
+	}
+	
+	private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n')
+					return position + i + 1;
+			}
+			position += read;
+		}
+		return size;
+	}
+	
+	private static List<long[]> parseChunk(ByteBuffer buffer, PointSet pointSet) {
+		List<long[]> triangulations = new ArrayList<>();
+		int limit = buffer.limit();
+		int position = 0;
+		int[] numbers = new int[64];
+		
+		while (position < limit) {
+			int lineEnd = position;
+			while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+				lineEnd++;
+			}
+			
+			if (lineEnd > position && buffer.get(position) != 'V') {
+				// All numbers in a triangulation line are vertex indices
+				int count = 0;
+				int number = -1;
+				for (int i = position; i < lineEnd; i++) {
+					byte b = buffer.get(i);
+					if (b >= '0' && b <= '9') {
+						number = (number < 0 ? 0 : number * 10) + (b - '0');
+					} else if (number >= 0) {
+						if (count == numbers.length)
+							numbers = Arrays.copyOf(numbers, count * 2);
+						numbers[count++] = number;
+						number = -1;
+					}
+				}
+				if (number >= 0) {
+					if (count == numbers.length)
+						numbers = Arrays.copyOf(numbers, count * 2);
+					numbers[count++] = number;
+				}
+				
+				if (count > 0)
+					triangulations.add(pointSet.encode(Arrays.copyOf(numbers, count)));
+			}
+			
+			position = lineEnd + 1;
+		}
+		
+		return triangulations;
+	}
+	
+	// Reads every number like -0.707 or 1e-16 that appears in the line
+	private static double[] parseDoubles(ByteBuffer buffer, int from, int to) {
+		double[] values = new double[16];
+		int count = 0;
+		StringBuilder token = new StringBuilder();
+		
+		for (int i = from; i <= to; i++) {
+			byte b = i < to ? buffer.get(i) : (byte) ' ';
+			boolean startsNumber = (b >= '0' && b <= '9') || (b == '-' && i + 1 < to && isDigit(buffer.get(i + 1)));
+			boolean continuesNumber = token.length() > 0 && (isDigit(b) || b == '.' || b == 'e' || b == 'E'
+					|| (b == '-' || b == '+') && (token.charAt(token.length() - 1) == 'e' || token.charAt(token.length() - 1) == 'E'));
+			
+			if (continuesNumber || (token.length() == 0 && startsNumber)) {
+				token.append((char) b);
+			} else if (token.length() > 0) {
+				if (count == values.length)
+					values = Arrays.copyOf(values, count * 2);
+				values[count++] = Double.parseDouble(token.toString());
+				token.setLength(0);
+			}
+		}
+		
+		return Arrays.copyOf(values, count);
+	}
+	
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+}
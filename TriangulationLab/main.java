@@ -3,46 +3,63 @@ import java.util.*;
 
 
 public class main {
-	public static void main(String[] args) throws CloneNotSupportedException, FileNotFoundException{	
-			
-		List<Graph> graphs = new ArrayList<>();
-		FileInputStream inputFile = new FileInputStream(args[0]);
-		Scanner fileScanner = new Scanner(inputFile);
-		List<Node> nodes = new ArrayList<>();
-		while (fileScanner.hasNextLine()) {
-	
-			String nextLine = fileScanner.nextLine();
-			Scanner lineScanner = new Scanner(nextLine);
-			lineScanner.useDelimiter("[^[\\-]?\\d+[\\.\\d+]?]+");
-			if (nextLine.startsWith("V")) {
-				while (lineScanner.hasNext()) {
-					nodes.add(new Node(Double.valueOf(lineScanner.next()), Double.valueOf(lineScanner.next())));
-				}
+	public static void main(String[] args) throws CloneNotSupportedException, IOException{	
+		// --resume may be given anywhere, the other arguments keep their positions
+		List<String> arguments = new ArrayList<>(Arrays.asList(args));
+		boolean resume = arguments.remove("--resume");
+		args = arguments.toArray(new String[0]);
+		
+		List<Graph> graphs = loadGraphs(args[0]);
 	
-			} else {
-				Graph nextGraph = new Graph();
-				for (Node v : nodes) {
-					nextGraph.nodes.add(new Node(v.x, v.y));
-				}
+		FlipGraph f = new FlipGraph();
+		f.addGraphs(graphs);
+		f.symmetryReduction = Boolean.parseBoolean(System.getProperty("symmetry", "true"));
+		f.options.checkpointFile = new File(args[0]).getName() + ".r" + args[1] + ".checkpoint";
+		f.options.checkpointInterval = Integer.getInteger("checkpointInterval", 60);
+		f.options.resume = resume;
+		f.options.reportInterval = Integer.getInteger("reportInterval", 10);
+		f.options.termination = Termination.valueOf(System.getProperty("termination", "PER_START_NODE").toUpperCase());
+		f.options.cycleLimit = Integer.getInteger("cycleLimit", 0);
+		f.options.timeLimit = Integer.getInteger("timeLimit", 0);
+		f.options.transpositionTableSize = Integer.getInteger("transpositionTable", 0);
+		f.options.meetInTheMiddle = Boolean.getBoolean("meetInTheMiddle");
+		if (System.getProperty("memoryBudget") != null)
+			f.options.memoryBudget = Long.getLong("memoryBudget") << 20;
+		f.options.spillDirectory = System.getProperty("spillDirectory", f.options.spillDirectory);
+		
+		int parallelism = args.length > 3? Integer.valueOf(args[3]): Runtime.getRuntime().availableProcessors();
+		f.findRainbowCycle(Integer.valueOf(args[1]), args[2], parallelism);
+	}
 	
-				while (lineScanner.hasNextInt()) {
-					nextGraph.edges.add(new Edge(nextGraph.nodes.get(lineScanner.nextInt()),
-							nextGraph.nodes.get(lineScanner.nextInt())));
-				}
+	// The input is either a file as exported from SageMath or "[n]gon" for the regular n-gon.
+	// A file holding only the point set (V=...) gets its triangulations generated.
+	public static List<Graph> loadGraphs(String input) throws IOException {
+		if (input.matches("\\d+gon"))
+			return generateGraphs(PointSet.intern(FlipGraphGenerator.regularPolygon(Integer.valueOf(input.substring(0, input.length() - 3)))));
+		
+		return readGraphs(input);
+	}
 	
-				graphs.add(nextGraph);
-			}
-			
-			lineScanner.close();
-		}
-		fileScanner.close();
+	public static List<Graph> generateGraphs(PointSet pointSet) {
+		FlipGraphGenerator generator = new FlipGraphGenerator(pointSet);
+		List<Graph> graphs = generator.generateGraphs();
+		System.out.printf("Generated %d triangulations in %.0f ms%n", graphs.size(), generator.nanosSpent / 1e6);
+		return graphs;
+	}
 	
-		FlipGraph f = new FlipGraph();
-		for (Graph g : graphs) {
-			f.addGraph(g);
+	public static List<Graph> readGraphs(String fileName) throws IOException {
+		TriangulationParser parser = new TriangulationParser();
+		parser.parse(fileName);
+		System.out.printf("Read %d triangulations (%.1f MB) in %.0f ms, %.1f MB/s%n", parser.triangulations.size(),
+				parser.bytesRead / 1e6, parser.nanosSpent / 1e6, parser.getThroughput());
+		if (parser.triangulations.isEmpty())
+			return generateGraphs(parser.pointSet);
+		
+		List<Graph> graphs = new ArrayList<>();
+		for (long[] edgeBits : parser.triangulations) {
+			graphs.add(new Graph(parser.pointSet, edgeBits));
 		}
 		
-		f.findRainbowCycle(Integer.valueOf(args[1]), args[2]);
+		return graphs;
 	}
 }
-